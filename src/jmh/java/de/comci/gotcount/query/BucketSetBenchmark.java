@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifying values into range buckets with {@link BucketSet} versus testing
+ * every bucket's predicate in turn. Ops/s are classified values per second.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucketSetBenchmark {
+
+    static final int ROWS = 1024;
+
+    @Param({"8", "100"})
+    public int buckets;
+
+    private List<Bucket> list;
+    private BucketSet set;
+    private long[] values;
+    private Long[] boxedValues;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>();
+        for (int i = 0; i < buckets; i++) {
+            list.add(Bucket.fromString("b" + i + ":[" + (10 * i) + "," + (10 * i + 10) + ")"));
+        }
+        set = new BucketSet(list);
+        Random random = new Random(42);
+        values = new long[ROWS];
+        boxedValues = new Long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            values[i] = random.nextInt(10 * buckets + 10);
+            boxedValues[i] = values[i];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int testEveryBucket() {
+        int sum = 0;
+        for (Long value : boxedValues) {
+            int index = -1;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i).getPredicate().test(value)) {
+                    index = i;
+                    break;
+                }
+            }
+            sum += index;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int bucketSetLong() {
+        int sum = 0;
+        for (long value : values) {
+            sum += set.indexOf(value);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Grouped counting with {@link Counter} versus the naive loop testing every
+ * predicate of the filter and every bucket of a row. Ops/s are rows per
+ * second.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    static final int ROWS = 1 << 16;
+
+    private Filter filter;
+    private BucketSet ages;
+    private Counter counter;
+    private Counter.Counts counts;
+    private ForkJoinPool pool;
+    private Map<String, Object> columns;
+    private Row[] rows;
+
+    @Setup
+    public void setUp() {
+        filter = Filter.fromString("score:[2.5,7.5);country:!0");
+        ages = BucketSet.fromStrings(Arrays.asList("0s:[0,9]", "10s:[10,19]", "20s:[20,29]",
+                "30s:[30,39]", "40s:[40,49]", "50s:[50,59]", "60s:[60,69]", "70 and older:[70,120]"));
+        Map<String, List<BucketSet>> buckets = new HashMap<>();
+        buckets.put("age", Collections.singletonList(ages));
+        counter = new Counter(filter, buckets);
+        counts = counter.newCounts();
+        pool = new ForkJoinPool();
+        Random random = new Random(42);
+        long[] age = new long[ROWS];
+        int[] country = new int[ROWS];
+        double[] score = new double[ROWS];
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            age[i] = random.nextInt(100);
+            country[i] = random.nextInt(8);
+            score[i] = random.nextDouble() * 10;
+            final Map<String, Object> values = new HashMap<>();
+            values.put("age", age[i]);
+            values.put("country", (long) country[i]);
+            values.put("score", score[i]);
+            rows[i] = new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return values.get(dimension);
+                }
+
+            };
+        }
+        columns = new HashMap<>();
+        columns.put("age", age);
+        columns.put("country", country);
+        columns.put("score", score);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Baseline: {@link Predicate#test} of every dimension and bucket
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long[] naive() {
+        long[] result = new long[ages.size()];
+        for (Row row : rows) {
+            boolean match = true;
+            for (String dimension : filter.getDimensions()) {
+                if (!filter.getPredicate(dimension).test(row.get(dimension))) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                for (int i = 0; i < ages.size(); i++) {
+                    if (ages.get(i).getPredicate().test(row.get("age"))) {
+                        result[i]++;
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long rows() {
+        for (Row row : rows) {
+            counts.add(row);
+        }
+        return counts.getMatched();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long columns() {
+        counts.add(columns, 0, ROWS);
+        return counts.getMatched();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long columnsParallel() {
+        return counter.count(columns, ROWS, pool).getMatched();
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding date and time literals with {@link DateDecoder} versus a new
+ * {@link SimpleDateFormat} per value, as the parsers did before, and parsing
+ * a filter with a list of dates. Ops/s are literals per second.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateDecoderBenchmark {
+
+    static final int VALUES = 64;
+
+    @Param({"UTC", "Europe/Berlin"})
+    public String zone;
+
+    private String[] dates;
+    private String[] times;
+    private String dateList;
+    private DateDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        dates = new String[VALUES];
+        times = new String[VALUES];
+        StringBuilder list = new StringBuilder("d:{");
+        for (int i = 0; i < VALUES; i++) {
+            dates[i] = String.format("%04d-%02d-%02d", 1970 + random.nextInt(60), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            times[i] = String.format("%02d:%02d:%02d", random.nextInt(24), random.nextInt(60), random.nextInt(60));
+            list.append((i > 0) ? "," : "").append(dates[i]);
+        }
+        dateList = list.append('}').toString();
+        decoder = DateDecoder.of(java.time.ZoneId.of(zone));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long simpleDateFormatDate() throws ParseException {
+        long sum = 0;
+        for (String date : dates) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setTimeZone(java.util.TimeZone.getTimeZone(zone));
+            sum += format.parse(date).getTime();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long decoderDate() {
+        long sum = 0;
+        for (String date : dates) {
+            sum += new Date(decoder.dateMillis(date, 0)).getTime();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long simpleDateFormatTime() throws ParseException {
+        long sum = 0;
+        for (String time : times) {
+            SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+            format.setTimeZone(java.util.TimeZone.getTimeZone(zone));
+            sum += format.parse(time).getTime();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public long decoderTime() {
+        long sum = 0;
+        for (String time : times) {
+            sum += new Date(decoder.timeMillis(time, 0, time.length())).getTime();
+        }
+        return sum;
+    }
+
+    /**
+     * A filter with a list of {@link #VALUES} dates, parsed in the default
+     * zone by the descent engine
+     */
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public Filter dateListFilter() {
+        return Filter.fromString(dateList, ParserEngine.RECURSIVE_DESCENT);
+    }
+
+}
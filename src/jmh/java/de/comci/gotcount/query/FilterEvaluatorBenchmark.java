@@ -0,0 +1,171 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Row-at-a-time filtering with {@link FilterEvaluator} and with a filter
+ * generated by {@link FilterCompiler}, versus testing the dimensions in the
+ * order of {@link Filter#getDimensions()}. Most rows are
+ * rejected by the cheap equality check, the list check is expensive. Ops/s
+ * are rows per second.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterEvaluatorBenchmark {
+
+    static final int ROWS = 1024;
+
+    private Filter filter;
+    private FilterEvaluator evaluator;
+    private RowFilter compiled;
+    private RowFilter compiledSmall;
+    private FilterEvaluator evaluatorSmall;
+    private EncodedFilter encoded;
+    private Row[] rows;
+
+    @Setup
+    public void setUp() {
+        StringBuilder list = new StringBuilder("user:{");
+        for (int i = 0; i < 500; i++) {
+            list.append((i > 0) ? "," : "").append("user").append(i);
+        }
+        filter = Filter.fromString(list.append("};country:de;age:[18,65)").toString(), ParserEngine.RECURSIVE_DESCENT);
+        evaluator = filter.compile();
+        compiled = new FilterCompiler(1, ParserEngine.RECURSIVE_DESCENT).compile(list.toString());
+        // inlined checks only, most rows pass all of them
+        String small = "user:!{user1,user2,user3};country:!xx;age:[0,90)";
+        compiledSmall = new FilterCompiler(1).compile(small);
+        evaluatorSmall = Filter.fromString(small).compile();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(EncodedFilter.encodedSize(filter));
+        EncodedFilter.encode(filter, buffer);
+        buffer.flip();
+        encoded = EncodedFilter.wrap(buffer);
+        Random random = new Random(42);
+        String[] countries = {"de", "fr", "it", "es", "us", "uk", "nl", "pl"};
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            final Map<String, Object> values = new HashMap<>();
+            values.put("user", "user" + random.nextInt(1000));
+            values.put("country", countries[random.nextInt(countries.length)]);
+            values.put("age", (long) random.nextInt(90));
+            rows[i] = new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return values.get(dimension);
+                }
+
+            };
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int dimensionOrder() {
+        int matches = 0;
+        for (Row row : rows) {
+            boolean match = true;
+            for (String dimension : filter.getDimensions()) {
+                if (!filter.getPredicate(dimension).test(row.get(dimension))) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int evaluator() {
+        int matches = 0;
+        for (Row row : rows) {
+            if (evaluator.test(row)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * The filter read in place from a direct buffer, dimensions in their
+     * natural order
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int encoded() {
+        int matches = 0;
+        for (Row row : rows) {
+            if (encoded.test(row)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int compiled() {
+        int matches = 0;
+        for (Row row : rows) {
+            if (compiled.test(row)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int evaluatorInlinedChecks() {
+        int matches = 0;
+        for (Row row : rows) {
+            if (evaluatorSmall.test(row)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int compiledInlinedChecks() {
+        int matches = 0;
+        for (Row row : rows) {
+            if (compiledSmall.test(row)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many filters built from few distinct predicates, tested with one
+ * {@link MultiFilterEvaluator} versus one {@link FilterEvaluator} per filter.
+ * Ops/s are rows per second; {@code multiFilter} should stay about flat as
+ * the number of filters grows, while {@code perFilter} drops linearly.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiFilterEvaluatorBenchmark {
+
+    static final int ROWS = 256;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int filters;
+
+    private MultiFilterEvaluator multi;
+    private FilterEvaluator[] evaluators;
+    private long[] matches;
+    private Row[] rows;
+
+    @Setup
+    public void setUp() {
+        String[] conditions = {"country:DE", "country:{FR,IT,ES}", "country:!US", "status:!deleted", "status:open",
+            "age:[18,65)", "age:(30,40]", "age:{20,25,30,35}", "user:{u1,u2,u3,u4,u5,u6,u7,u8}", "user:!u0"};
+        Random random = new Random(42);
+        List<Filter> list = new ArrayList<>();
+        evaluators = new FilterEvaluator[filters];
+        for (int i = 0; i < filters; i++) {
+            StringBuilder query = new StringBuilder();
+            for (int j = 0; j < 3; j++) {
+                query.append((j > 0) ? ";" : "").append(conditions[random.nextInt(conditions.length)]);
+            }
+            Filter filter = Filter.fromString(query.toString());
+            list.add(filter);
+            evaluators[i] = filter.compile();
+        }
+        multi = new MultiFilterEvaluator(list);
+        matches = Bitmaps.allocate(filters);
+        String[] countries = {"DE", "FR", "IT", "ES", "US", "UK"};
+        String[] states = {"open", "deleted", "closed"};
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            final Map<String, Object> values = new HashMap<>();
+            values.put("country", countries[random.nextInt(countries.length)]);
+            values.put("status", states[random.nextInt(states.length)]);
+            values.put("age", (long) random.nextInt(90));
+            values.put("user", "u" + random.nextInt(10));
+            rows[i] = new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return values.get(dimension);
+                }
+
+            };
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int perFilter() {
+        int matched = 0;
+        for (Row row : rows) {
+            for (FilterEvaluator evaluator : evaluators) {
+                if (evaluator.test(row)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int multiFilter() {
+        int matched = 0;
+        for (Row row : rows) {
+            multi.test(row, matches);
+            matched += (int) matches[0];
+        }
+        return matched;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of {@link ParallelEvaluator} with the number of pool threads, over
+ * columns and over rows. Ops/s are rows per second, the speedup is the score
+ * relative to threads=1 and can only reach the number of available cores.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelEvaluatorBenchmark {
+
+    static final int COLUMN_ROWS = 1 << 22;
+    static final int ROWS = 1 << 20;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private ParallelEvaluator evaluator;
+    private Map<String, Object> columns;
+    private List<Row> rows;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(threads);
+        evaluator = new ParallelEvaluator(Filter.fromString("age:[18,65);country:{1,3,5}"), pool);
+        Random random = new Random(42);
+        long[] age = new long[COLUMN_ROWS];
+        int[] country = new int[COLUMN_ROWS];
+        for (int i = 0; i < COLUMN_ROWS; i++) {
+            age[i] = random.nextInt(90);
+            country[i] = random.nextInt(8);
+        }
+        columns = new HashMap<>();
+        columns.put("age", age);
+        columns.put("country", country);
+        rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            final long rowAge = age[i];
+            final long rowCountry = country[i];
+            rows.add(new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return (dimension.equals("age")) ? rowAge : rowCountry;
+                }
+
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLUMN_ROWS)
+    public long countColumns() {
+        return evaluator.count(columns, COLUMN_ROWS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COLUMN_ROWS)
+    public int selectColumns() {
+        return evaluator.select(columns, COLUMN_ROWS).length;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long countRows() {
+        return evaluator.count(rows.spliterator());
+    }
+
+}
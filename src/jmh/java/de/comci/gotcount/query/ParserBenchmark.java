@@ -0,0 +1,204 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.parboiled.Parboiled;
+import org.parboiled.parserunners.ReportingParseRunner;
+
+/**
+ * Parsing throughput of {@link Filter#fromString} and
+ * {@link Bucket#fromString} per engine, and of valid and invalid input with
+ * {@link Filter#parse}, and of editing one dimension of the long query with
+ * an {@link IncrementalParser}. Run with -t to measure how parsing
+ * scales with the number of threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    static final String SHORT_QUERY = "d0:abc;d1:!4";
+
+    static final String ESCAPED_QUERY = "d\\:0:ab\\:cd;d\\(1\\):a\\(b\\)c;d\\[2\\]:a\\[b\\]c;"
+            + "d\\;3:a\\;b\\;c;d\\!4:\\!a\\!bc;path\\: a\\;b:{x\\:y,a\\(b\\),c\\;d}";
+
+    static final String BUCKET = "Children and Teenagers:[0,19]";
+
+    /**
+     * Does not match: the range of the first dimension is not closed
+     */
+    static final String INVALID_QUERY = "d0:[0,19;d1:{node,user,group};d2:!4";
+
+    /**
+     * A query of 120 dimensions cycling through all predicate kinds
+     */
+    static String longQuery() {
+        String[] conditions = {"abc", "!4", "[0,19]", "{node,user,group}", "(2010-01-01,2013-12-31]", "12:46", "!10.10.10.10", "-7"};
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            if (i > 0) {
+                query.append(';');
+            }
+            query.append("dimension").append(i).append(':').append(conditions[i % conditions.length]);
+        }
+        return query.toString();
+    }
+
+    static final int LINES = 1000;
+
+    @Param({"PARBOILED", "RECURSIVE_DESCENT"})
+    public ParserEngine engine;
+
+    private String longQuery;
+    private String[] edits;
+    private IncrementalParser incremental;
+    private final PredicatePool pool = new PredicatePool();
+    private int edit;
+    private String[] lines;
+    private String file;
+
+    @Setup
+    public void setUp() {
+        longQuery = longQuery();
+        lines = new String[LINES];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = "d" + i + ":abc;d1:!" + i + ";path:{node,user" + i + "}";
+            text.append(lines[i]).append('\n');
+        }
+        file = text.toString();
+        // the long query with its last dimension edited back and forth
+        edits = new String[]{longQuery + ";edited:abc", longQuery + ";edited:abd"};
+        incremental = new IncrementalParser(engine);
+    }
+
+    @Benchmark
+    public Filter filterShort() {
+        return Filter.fromString(SHORT_QUERY, engine);
+    }
+
+    @Benchmark
+    public Filter filterLong() {
+        return Filter.fromString(longQuery, engine);
+    }
+
+    /**
+     * Parsing plus interning in a {@link PredicatePool}, all predicates hit
+     */
+    @Benchmark
+    public Filter filterLongInterned() {
+        return pool.intern(Filter.fromString(longQuery, engine));
+    }
+
+    @Benchmark
+    public Filter filterEscaped() {
+        return Filter.fromString(ESCAPED_QUERY, engine);
+    }
+
+    /**
+     * Single pass with {@link Filter#parse}
+     */
+    @Benchmark
+    public Filter filterShortStrict() {
+        return Filter.parse(SHORT_QUERY, engine);
+    }
+
+    /**
+     * Invalid input through the reporting runner of {@link Filter#fromString}
+     */
+    @Benchmark
+    public Filter filterInvalid() {
+        return Filter.fromString(INVALID_QUERY, engine);
+    }
+
+    /**
+     * Invalid input failing fast in {@link Filter#parse}
+     */
+    @Benchmark
+    public int filterInvalidStrict() {
+        try {
+            return Filter.parse(INVALID_QUERY, engine).getDimensions().size();
+        } catch (QueryParseException ex) {
+            return ex.getPosition();
+        }
+    }
+
+    /**
+     * Reparses only the edited dimension, compare with {@link #filterLong}
+     */
+    @Benchmark
+    public Filter filterLongEdited() {
+        edit ^= 1;
+        return incremental.parse(edits[edit]);
+    }
+
+    @Benchmark
+    public Bucket bucket() {
+        return Bucket.fromString(BUCKET, engine);
+    }
+
+    /**
+     * Bulk loading through {@link QueryReader} on the calling thread, ops/s
+     * are lines per second
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int readFilters() throws IOException {
+        int valid = 0;
+        try (QueryReader<Filter> reader = QueryReader.filters(new StringReader(file), engine, 1)) {
+            while (reader.hasNext()) {
+                if (reader.next().isValid()) {
+                    valid++;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Bulk loading baseline: one {@link Filter#fromString} per line
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int fromStringPerLine() {
+        int dimensions = 0;
+        for (String line : lines) {
+            dimensions += Filter.fromString(line, engine).getDimensions().size();
+        }
+        return dimensions;
+    }
+
+    /**
+     * Baseline: a new parboiled parser and runner per parse, as done before
+     * parsers were cached. Independent of the engine parameter.
+     */
+    @Benchmark
+    public Object filterShortUncachedParboiled() {
+        QueryParser parser = Parboiled.createParser(QueryParser.class);
+        return new ReportingParseRunner<>(parser.Query()).run(SHORT_QUERY).resultValue;
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link Predicate#test} per predicate type, over values that
+ * are already boxed and over primitives boxed at the call, and of the
+ * allocation free {@link LongPredicate#testLong} and
+ * {@link BatchPredicate#selectLong} paths.
+ *
+ * Every invocation tests {@link #ROWS} values, the reported ops/s are tests
+ * per second.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PredicateBenchmark {
+
+    static final int ROWS = 1024;
+
+    @Param({"10", "1000"})
+    public int listSize;
+
+    private long[] longs;
+    private long[] selection;
+    private Long[] boxedLongs;
+    private String[] strings;
+
+    private Predicate numberCheck;
+    private Predicate rangeCheck;
+    private Predicate listCheck;
+    private Predicate stringListCheck;
+    private Predicate defaultCheck;
+    private Predicate dateCheck;
+    private Date[] dates;
+    private Predicate[] mixed;
+    private Object[] mixedValues;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        longs = new long[ROWS];
+        selection = Bitmaps.allocate(ROWS);
+        boxedLongs = new Long[ROWS];
+        strings = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            // outside of the Long cache, so boxing allocates
+            longs[i] = 1000 + random.nextInt(2 * listSize);
+            boxedLongs[i] = longs[i];
+            strings[i] = "user" + longs[i];
+        }
+        List<Object> numbers = new ArrayList<>();
+        List<Object> names = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            numbers.add(1000l + 2 * i);
+            names.add("user" + (1000 + 2 * i));
+        }
+        numberCheck = new QueryParser.NumberCheck(1000l + listSize, false);
+        rangeCheck = new QueryParser.RangeCheck(1000l, true, 1000l + listSize, false);
+        listCheck = new QueryParser.ListCheck<Object>(numbers, false, Object.class);
+        stringListCheck = new QueryParser.ListCheck<Object>(names, false, Object.class);
+        defaultCheck = new QueryParser.DefaultCheck<>("user" + (1000 + listSize), false, String.class);
+        dateCheck = new QueryParser.DateCheck(new Date(1000l + listSize), false);
+        dates = new Date[ROWS];
+        mixed = new Predicate[ROWS];
+        mixedValues = new Object[ROWS];
+        Predicate[] checks = {numberCheck, rangeCheck, defaultCheck, dateCheck};
+        Object[][] values = {boxedLongs, boxedLongs, strings, dates};
+        for (int i = 0; i < ROWS; i++) {
+            dates[i] = new Date(longs[i]);
+            mixed[i] = checks[i % checks.length];
+            mixedValues[i] = values[i % checks.length][i];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int numberCheckBoxed() {
+        int matches = 0;
+        for (Long value : boxedLongs) {
+            if (numberCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int numberCheckPrimitive() {
+        int matches = 0;
+        for (long value : longs) {
+            if (numberCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int numberCheckTestLong() {
+        LongPredicate check = (LongPredicate) numberCheck;
+        int matches = 0;
+        for (long value : longs) {
+            if (check.testLong(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int rangeCheckBoxed() {
+        int matches = 0;
+        for (Long value : boxedLongs) {
+            if (rangeCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int rangeCheckPrimitive() {
+        int matches = 0;
+        for (long value : longs) {
+            if (rangeCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int rangeCheckTestLong() {
+        LongPredicate check = (LongPredicate) rangeCheck;
+        int matches = 0;
+        for (long value : longs) {
+            if (check.testLong(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long[] rangeCheckSelectLong() {
+        ((BatchPredicate) rangeCheck).selectLong(longs, 0, ROWS, selection, false);
+        return selection;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int listCheckBoxed() {
+        int matches = 0;
+        for (Long value : boxedLongs) {
+            if (listCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int listCheckPrimitive() {
+        int matches = 0;
+        for (long value : longs) {
+            if (listCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int listCheckTestLong() {
+        LongPredicate check = (LongPredicate) listCheck;
+        int matches = 0;
+        for (long value : longs) {
+            if (check.testLong(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long[] listCheckSelectLong() {
+        ((BatchPredicate) listCheck).selectLong(longs, 0, ROWS, selection, false);
+        return selection;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int listCheckString() {
+        int matches = 0;
+        for (String value : strings) {
+            if (stringListCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int defaultCheckString() {
+        int matches = 0;
+        for (String value : strings) {
+            if (defaultCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int dateCheckBoxed() {
+        int matches = 0;
+        for (Date value : dates) {
+            if (dateCheck.test(value)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Number, range, string and date checks through one call site
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int megamorphicBoxed() {
+        int matches = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (mixed[i].test(mixedValues[i])) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+}
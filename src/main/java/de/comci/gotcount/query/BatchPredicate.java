@@ -0,0 +1,39 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Evaluation of a {@link Predicate} over a slice of a column array at once.
+ * 
+ * The result for values[offset + i] is written to bit i of the selection
+ * bitmap, see {@link Bitmaps}. Bits of the last word beyond the slice are
+ * cleared.
+ * 
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface BatchPredicate {
+    
+    /**
+     * @param values the column
+     * @param offset index of the first value to test
+     * @param length number of values to test
+     * @param selection bitmap of at least {@link Bitmaps#words(int)} words
+     * @param and true to AND the result into the selection, false to
+     * overwrite it
+     */
+    void selectLong(long[] values, int offset, int length, long[] selection, boolean and);
+    
+    /**
+     * @see #selectLong(long[], int, int, long[], boolean) 
+     */
+    void selectInt(int[] values, int offset, int length, long[] selection, boolean and);
+    
+    /**
+     * @see #selectLong(long[], int, int, long[], boolean) 
+     */
+    void selectDouble(double[] values, int offset, int length, long[] selection, boolean and);
+    
+}
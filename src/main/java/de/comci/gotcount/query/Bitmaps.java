@@ -0,0 +1,110 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Helpers for the selection bitmaps filled by {@link BatchPredicate}: bit i of
+ * row i is bit (i % 64) of word (i / 64).
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class Bitmaps {
+
+    private Bitmaps() {
+    }
+
+    /**
+     * @param length number of rows
+     * @return number of words needed to select length rows
+     */
+    public static int words(int length) {
+        return (length + 63) >>> 6;
+    }
+
+    /**
+     * @param length number of rows
+     * @return a bitmap for length rows, nothing selected
+     */
+    public static long[] allocate(int length) {
+        return new long[words(length)];
+    }
+
+    /**
+     * @return whether row index is selected
+     */
+    public static boolean get(long[] selection, int index) {
+        return (selection[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return number of selected rows
+     */
+    public static int cardinality(long[] selection) {
+        int count = 0;
+        for (long word : selection) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Selects the first length rows and clears the rest of their last word
+     */
+    public static void fill(long[] selection, int length) {
+        int full = length >>> 6;
+        for (int w = 0; w < full; w++) {
+            selection[w] = -1L;
+        }
+        if ((length & 63) != 0) {
+            selection[full] = (1L << length) - 1;
+        }
+    }
+
+    /**
+     * Tests length values from offset on, one word of results at a time, see
+     * {@link BatchPredicate#selectLong(long[], int, int, long[], boolean)}
+     */
+    static void selectLong(LongPredicate predicate, long[] values, int offset, int length, long[] selection, boolean and) {
+        for (int w = 0, i = offset, end = offset + length; i < end; w++) {
+            long bits = 0;
+            for (int b = 0, stop = Math.min(i + 64, end); i < stop; i++, b++) {
+                bits |= (predicate.testLong(values[i]) ? 1L : 0L) << b;
+            }
+            store(selection, w, bits, and);
+        }
+    }
+
+    /**
+     * @see #selectLong(LongPredicate, long[], int, int, long[], boolean)
+     */
+    static void selectInt(LongPredicate predicate, int[] values, int offset, int length, long[] selection, boolean and) {
+        for (int w = 0, i = offset, end = offset + length; i < end; w++) {
+            long bits = 0;
+            for (int b = 0, stop = Math.min(i + 64, end); i < stop; i++, b++) {
+                bits |= (predicate.testLong(values[i]) ? 1L : 0L) << b;
+            }
+            store(selection, w, bits, and);
+        }
+    }
+
+    /**
+     * @see #selectLong(LongPredicate, long[], int, int, long[], boolean)
+     */
+    static void selectDouble(DoublePredicate predicate, double[] values, int offset, int length, long[] selection, boolean and) {
+        for (int w = 0, i = offset, end = offset + length; i < end; w++) {
+            long bits = 0;
+            for (int b = 0, stop = Math.min(i + 64, end); i < stop; i++, b++) {
+                bits |= (predicate.testDouble(values[i]) ? 1L : 0L) << b;
+            }
+            store(selection, w, bits, and);
+        }
+    }
+
+    static void store(long[] selection, int word, long bits, boolean and) {
+        selection[word] = (and) ? selection[word] & bits : bits;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Fork/join tasks splitting rows into blocks, evaluating each block on its
+ * own and merging the results of the blocks in row order when their tasks
+ * are joined.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+final class BlockTasks {
+
+    /**
+     * Evaluates a block of column rows
+     *
+     * @param <R> result of a block
+     */
+    interface ColumnBlock<R> {
+
+        /**
+         * @param from first row
+         * @param to row after the last row
+         */
+        R evaluate(int from, int to);
+
+    }
+
+    /**
+     * Evaluates a block of rows
+     *
+     * @param <R> result of a block
+     */
+    interface RowBlock<R> {
+
+        /**
+         * @param rows the rows of the block
+         * @param origin encounter index of the first row, only known for
+         * subsized spliterators
+         */
+        R evaluate(Spliterator<? extends Row> rows, long origin);
+
+    }
+
+    private BlockTasks() {
+    }
+
+    /**
+     * @param block evaluates a block of at most blockSize rows
+     * @param merge merges the result of a block into that of the rows before
+     * @param rows number of rows, starting at 0
+     * @param blockSize
+     * @return a task splitting the rows at block boundaries
+     */
+    static <R> RecursiveTask<R> columns(ColumnBlock<R> block, BinaryOperator<R> merge, int rows, int blockSize) {
+        return new ColumnTask<>(block, merge, 0, rows, blockSize);
+    }
+
+    /**
+     * @param block evaluates the rows left after splitting off blocks
+     * @param merge merges the result of a block into that of the rows before
+     * @param rows
+     * @param blockSize rows above which a spliterator is split further
+     * @return a task splitting the spliterator while it holds more than
+     * blockSize rows
+     */
+    static <R> RecursiveTask<R> rows(RowBlock<R> block, BinaryOperator<R> merge, Spliterator<? extends Row> rows, int blockSize) {
+        return new RowTask<>(block, merge, rows, 0, blockSize);
+    }
+
+    private static final class ColumnTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnBlock<R> block;
+        private final BinaryOperator<R> merge;
+        private final int from;
+        private final int to;
+        private final int blockSize;
+
+        ColumnTask(ColumnBlock<R> block, BinaryOperator<R> merge, int from, int to, int blockSize) {
+            this.block = block;
+            this.merge = merge;
+            this.from = from;
+            this.to = to;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= blockSize) {
+                return block.evaluate(from, to);
+            }
+            // split at a block boundary, at least one block each
+            int blocks = (int) (((long) to - from + blockSize - 1) / blockSize);
+            int mid = from + (blocks >>> 1) * blockSize;
+            ColumnTask<R> left = new ColumnTask<>(block, merge, from, mid, blockSize);
+            left.fork();
+            R right = new ColumnTask<>(block, merge, mid, to, blockSize).compute();
+            return merge.apply(left.join(), right);
+        }
+
+    }
+
+    private static final class RowTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RowBlock<R> block;
+        private final BinaryOperator<R> merge;
+        private final Spliterator<? extends Row> rows;
+        private final long origin;
+        private final int blockSize;
+
+        RowTask(RowBlock<R> block, BinaryOperator<R> merge, Spliterator<? extends Row> rows, long origin, int blockSize) {
+            this.block = block;
+            this.merge = merge;
+            this.rows = rows;
+            this.origin = origin;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected R compute() {
+            // fork the prefixes split off, evaluate the rest here
+            List<RowTask<R>> prefixes = new ArrayList<>();
+            long start = origin;
+            Spliterator<? extends Row> prefix;
+            while (rows.estimateSize() > blockSize && (prefix = rows.trySplit()) != null) {
+                RowTask<R> task = new RowTask<>(block, merge, prefix, start, blockSize);
+                start += prefix.estimateSize();
+                task.fork();
+                prefixes.add(task);
+            }
+            R rest = block.evaluate(rows, start);
+            R result = null;
+            for (RowTask<R> task : prefixes) {
+                result = (result == null) ? task.join() : merge.apply(result, task.join());
+            }
+            return (result == null) ? rest : merge.apply(result, rest);
+        }
+
+    }
+
+}
@@ -6,12 +6,13 @@
 package de.comci.gotcount.query;
 
 import java.util.Map;
-import org.parboiled.Parboiled;
-import org.parboiled.parserunners.ReportingParseRunner;
+import java.util.NoSuchElementException;
 
 /**
  * Filter constructs the predicate set based on a query string
  * 
+ * Instances are immutable and may be shared between threads.
+ * 
  * @author Sebastian Maier (sebastian.maier@comci.de)
  */
 public class Bucket {
@@ -20,19 +21,91 @@ public class Bucket {
         return new Bucket(input);
     }
     
+    public static Bucket fromString(String input, ParserEngine engine) {
+        return new Bucket(input, engine);
+    }
+    
+    /**
+     * @see Filter#fromString(String, ParserEngine, DateDecoder)
+     */
+    public static Bucket fromString(String input, ParserEngine engine, DateDecoder decoder) {
+        return new Bucket(input, engine, decoder);
+    }
+    
+    /**
+     * Parses the whole input, failing on invalid input, see
+     * {@link Filter#parse(String)}
+     * 
+     * @param input
+     * @return
+     * @throws QueryParseException if the input does not match or exceeds the
+     * limits
+     */
+    public static Bucket parse(String input) {
+        return parse(input, ParserEngine.PARBOILED, ParseLimits.DEFAULT);
+    }
+    
+    public static Bucket parse(String input, ParserEngine engine) {
+        return parse(input, engine, ParseLimits.DEFAULT);
+    }
+    
+    public static Bucket parse(String input, ParserEngine engine, ParseLimits limits) {
+        return parse(input, engine, limits, DateDecoder.getDefault());
+    }
+    
+    public static Bucket parse(String input, ParserEngine engine, ParseLimits limits, DateDecoder decoder) {
+        return new Bucket(engine.strictFilter(input, limits, decoder));
+    }
+    
     private final Map.Entry<String, Predicate> bucket;
 
     public Bucket(String input) {
-        QueryParser parser = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> reportingParseRunner = new ReportingParseRunner<>(parser.Filter());
-        bucket = (Map.Entry)reportingParseRunner.run(input).resultValue;        
+        this(input, ParserEngine.PARBOILED);
+    }
+
+    public Bucket(String input, ParserEngine engine) {
+        this(input, engine, DateDecoder.getDefault());
+    }
+
+    public Bucket(String input, ParserEngine engine, DateDecoder decoder) {
+        this(engine.filter(input, decoder));
+    }
+
+    /**
+     * @param bucket the name and predicate as returned by
+     * {@link ParserEngine#filter}, see {@link Simplifier}
+     */
+    Bucket(Map.Entry<String, Predicate> bucket) {
+        this.bucket = Simplifier.simplify(bucket);
+    }
+    
+    /**
+     * @return false if the input did not match, so there is no name and
+     * predicate
+     */
+    boolean isMatched() {
+        return bucket != null;
     }
     
+    /**
+     * @return the name
+     * @throws NoSuchElementException if the input did not match
+     */
     public String getName() {
+        if (bucket == null) {
+            throw new NoSuchElementException();
+        }
         return bucket.getKey();
     }
     
+    /**
+     * @return the predicate
+     * @throws NoSuchElementException if the input did not match
+     */
     public Predicate getPredicate() {
+        if (bucket == null) {
+            throw new NoSuchElementException();
+        }
         return bucket.getValue();
     }
     
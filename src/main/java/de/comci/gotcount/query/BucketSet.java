@@ -0,0 +1,471 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies values into one of several {@link Bucket}s without testing every
+ * bucket.
+ *
+ * Buckets that are all ranges or single numbers (or all date ranges and
+ * single dates) are compiled into sorted, disjoint intervals and searched
+ * binary. Buckets that are all single values or lists are looked up in a hash
+ * map. Any other set, e.g. one containing negated buckets, tests the buckets
+ * in order and returns the first match.
+ *
+ * Overlapping buckets are rejected when the set is built, except for sets
+ * that test in order, where overlaps cannot be detected in general.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class BucketSet {
+
+    /**
+     * @param definitions bucket definitions, e.g.
+     * {@code Children and Teenagers:[0,19]}
+     * @return
+     * @throws IllegalArgumentException if buckets overlap
+     */
+    public static BucketSet fromStrings(List<String> definitions) {
+        return fromStrings(definitions, ParserEngine.PARBOILED);
+    }
+
+    public static BucketSet fromStrings(List<String> definitions, ParserEngine engine) {
+        List<Bucket> buckets = new ArrayList<>();
+        for (String definition : definitions) {
+            buckets.add(new Bucket(definition, engine));
+        }
+        return new BucketSet(buckets);
+    }
+
+    private enum Lookup {
+
+        LONG_INTERVALS, DOUBLE_INTERVALS, VALUES, IN_ORDER
+
+    }
+
+    private final List<Bucket> buckets;
+    private final Lookup lookup;
+
+    // intervals sorted by their lower bound and the bucket of each interval
+    private final int[] intervalBucket;
+    private final long[] longLows;
+    private final long[] longHighs;
+    private final double[] doubleLows;
+    private final double[] doubleHighs;
+    private final boolean[] lowInclusive;
+    private final boolean[] highInclusive;
+    private final boolean dates;
+
+    private final Map<Object, Integer> values;
+
+    /**
+     * @param buckets
+     * @throws IllegalArgumentException if a bucket did not match or buckets
+     * overlap
+     */
+    public BucketSet(List<Bucket> buckets) {
+        for (int i = 0; i < buckets.size(); i++) {
+            if (!buckets.get(i).isMatched()) {
+                throw new IllegalArgumentException(String.format("bucket %d did not match", i));
+            }
+        }
+        this.buckets = Collections.unmodifiableList(new ArrayList<>(buckets));
+        List<Interval> intervals = intervals(this.buckets);
+        Map<Object, Integer> map = (intervals == null) ? values(this.buckets) : null;
+        if (intervals != null) {
+            boolean integral = true;
+            boolean date = false;
+            for (Interval interval : intervals) {
+                // (0,1) holds no whole number but matches 0.5
+                integral &= interval.integral && interval.lowest <= interval.highest;
+                date |= interval.date;
+            }
+            Collections.sort(intervals, (integral) ? LONG_ORDER : DOUBLE_ORDER);
+            int n = intervals.size();
+            intervalBucket = new int[n];
+            for (int i = 0; i < n; i++) {
+                intervalBucket[i] = intervals.get(i).bucket;
+            }
+            dates = date;
+            values = null;
+            if (integral) {
+                lookup = Lookup.LONG_INTERVALS;
+                longLows = new long[n];
+                longHighs = new long[n];
+                for (int i = 0; i < n; i++) {
+                    longLows[i] = intervals.get(i).lowest;
+                    longHighs[i] = intervals.get(i).highest;
+                    // numbers between whole ones match ranges too, dates
+                    // have whole millis only
+                    if (i > 0 && (longLows[i] <= longHighs[i - 1]
+                            || (!date && intervals.get(i).overlaps(intervals.get(i - 1))))) {
+                        throw overlap(intervalBucket[i - 1], intervalBucket[i]);
+                    }
+                }
+                doubleLows = doubleHighs = null;
+                lowInclusive = highInclusive = null;
+            } else {
+                lookup = Lookup.DOUBLE_INTERVALS;
+                doubleLows = new double[n];
+                doubleHighs = new double[n];
+                lowInclusive = new boolean[n];
+                highInclusive = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    Interval interval = intervals.get(i);
+                    doubleLows[i] = interval.low;
+                    doubleHighs[i] = interval.high;
+                    lowInclusive[i] = interval.lowInclusive;
+                    highInclusive[i] = interval.highInclusive;
+                    if (i > 0 && interval.overlaps(intervals.get(i - 1))) {
+                        throw overlap(intervalBucket[i - 1], intervalBucket[i]);
+                    }
+                }
+                longLows = longHighs = null;
+            }
+        } else {
+            lookup = (map != null) ? Lookup.VALUES : Lookup.IN_ORDER;
+            values = map;
+            intervalBucket = null;
+            longLows = longHighs = null;
+            doubleLows = doubleHighs = null;
+            lowInclusive = highInclusive = null;
+            dates = map != null && !map.isEmpty() && allDates(map.keySet());
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public Bucket get(int index) {
+        return buckets.get(index);
+    }
+
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * @param value a number, or epoch millis if the buckets are dates
+     * @return the index of the bucket containing the value, -1 if none does
+     */
+    public int indexOf(long value) {
+        switch (lookup) {
+            case LONG_INTERVALS:
+                return longInterval(value);
+            case DOUBLE_INTERVALS:
+                return doubleInterval(value);
+            default:
+                return indexOf((dates) ? new Date(value) : (Object) value);
+        }
+    }
+
+    /**
+     * @param value
+     * @return the index of the bucket containing the value, -1 if none does
+     */
+    public int indexOf(double value) {
+        switch (lookup) {
+            case LONG_INTERVALS:
+                if (value == (long) value) {
+                    return longInterval((long) value);
+                }
+                return longIntervalFraction(value);
+            case DOUBLE_INTERVALS:
+                return doubleInterval(value);
+            default:
+                return indexOf((Object) value);
+        }
+    }
+
+    /**
+     * @param value
+     * @return the index of the bucket containing the value, -1 if none does
+     * or the value cannot be compared with the buckets
+     */
+    public int indexOf(Object value) {
+        if (value == null) {
+            return -1;
+        }
+        switch (lookup) {
+            case LONG_INTERVALS:
+            case DOUBLE_INTERVALS:
+                if (value instanceof Date) {
+                    return (dates) ? indexOf(((Date) value).getTime()) : -1;
+                }
+                if (!(value instanceof Number) || dates) {
+                    return -1;
+                }
+                Object n = QueryParser.ListCheck.normalize(value);
+                return (n instanceof Long) ? indexOf((long) (Long) n) : indexOf((double) (Double) n);
+            case VALUES:
+                Integer index = values.get(QueryParser.ListCheck.normalize(value));
+                return (index == null) ? -1 : index;
+            default:
+                for (int i = 0; i < buckets.size(); i++) {
+                    if (testInOrder(buckets.get(i).getPredicate(), value)) {
+                        return i;
+                    }
+                }
+                return -1;
+        }
+    }
+
+    /**
+     * @return false if the value cannot be compared with the bucket, which
+     * the predicates report by a type mismatch
+     */
+    private static boolean testInOrder(Predicate predicate, Object value) {
+        try {
+            return predicate.test(value);
+        } catch (IllegalArgumentException | ClassCastException ex) {
+            return false;
+        }
+    }
+
+    private int longInterval(long value) {
+        int i = floor(longLows, value);
+        return (i >= 0 && value <= longHighs[i]) ? intervalBucket[i] : -1;
+    }
+
+    /**
+     * A fraction in integral intervals: ranges compare it with their bounds,
+     * single numbers never match
+     */
+    private int longIntervalFraction(double value) {
+        if (value != value || dates) {
+            return -1;
+        }
+        int i = floor(longLows, (long) Math.floor(value));
+        for (int j = Math.max(i, 0); j <= i + 1 && j < intervalBucket.length; j++) {
+            Predicate predicate = buckets.get(intervalBucket[j]).getPredicate();
+            if (predicate instanceof QueryParser.RangeCheck && ((QueryParser.RangeCheck) predicate).testDouble(value)) {
+                return intervalBucket[j];
+            }
+        }
+        return -1;
+    }
+
+    private int doubleInterval(double value) {
+        if (value != value) {
+            return -1;
+        }
+        int i = floor(doubleLows, value);
+        // an interval excluding its lower bound may follow one ending there
+        for (int j = i; j >= 0 && j >= i - 1; j--) {
+            if (contains(j, value)) {
+                return intervalBucket[j];
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int i, double value) {
+        return ((lowInclusive[i]) ? value >= doubleLows[i] : value > doubleLows[i])
+                && ((highInclusive[i]) ? value <= doubleHighs[i] : value < doubleHighs[i]);
+    }
+
+    /**
+     * @return the last index with a lower bound not above the value, -1 if
+     * there is none
+     */
+    private static int floor(long[] lows, long value) {
+        int i = Arrays.binarySearch(lows, value);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+    private static int floor(double[] lows, double value) {
+        int low = 0, high = lows.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lows[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private static boolean allDates(Iterable<Object> values) {
+        for (Object value : values) {
+            if (!(value instanceof Date)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private IllegalArgumentException overlap(int a, int b) {
+        return new IllegalArgumentException(String.format("buckets overlap: %s and %s",
+                buckets.get(Math.min(a, b)).getName(), buckets.get(Math.max(a, b)).getName()));
+    }
+
+    /**
+     * @return one interval per non-empty bucket, null if a bucket is not a
+     * range or single value or numbers and dates are mixed
+     */
+    private static List<Interval> intervals(List<Bucket> buckets) {
+        List<Interval> intervals = new ArrayList<>();
+        Boolean dates = null;
+        for (int i = 0; i < buckets.size(); i++) {
+            Predicate predicate = buckets.get(i).getPredicate();
+            if (predicate == ConstantCheck.FALSE) {
+                continue; // never matches, e.g. (5,5)
+            }
+            Interval interval = Interval.of(i, predicate);
+            if (interval == null || (dates != null && dates != interval.date)) {
+                return null;
+            }
+            dates = interval.date;
+            if (!interval.isEmpty()) {
+                intervals.add(interval);
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * @return the bucket by normalized value, null if a bucket is not a
+     * single value or list
+     * @throws IllegalArgumentException if buckets share a value
+     */
+    private Map<Object, Integer> values(List<Bucket> buckets) {
+        Map<Object, Integer> map = new HashMap<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            Predicate predicate = buckets.get(i).getPredicate();
+            if (predicate == ConstantCheck.FALSE) {
+                continue;
+            }
+            if (!(predicate instanceof QueryParser.DefaultCheck) || ((QueryParser.DefaultCheck) predicate).isNot) {
+                return null;
+            }
+            Object v = ((QueryParser.DefaultCheck) predicate).v;
+            List<?> members = (predicate instanceof QueryParser.ListCheck) ? (List<?>) v : Collections.singletonList(v);
+            for (Object member : members) {
+                Integer previous = map.put(QueryParser.ListCheck.normalize(member), i);
+                if (previous != null && previous != i) {
+                    throw overlap(previous, i);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static final Comparator<Interval> LONG_ORDER = new Comparator<Interval>() {
+
+        @Override
+        public int compare(Interval a, Interval b) {
+            return Long.compare(a.lowest, b.lowest);
+        }
+
+    };
+
+    /**
+     * By lower bound, an inclusive bound before an exclusive one
+     */
+    private static final Comparator<Interval> DOUBLE_ORDER = new Comparator<Interval>() {
+
+        @Override
+        public int compare(Interval a, Interval b) {
+            int c = Double.compare(a.low, b.low);
+            if (c != 0) {
+                return c;
+            }
+            return (a.lowInclusive == b.lowInclusive) ? 0 : (a.lowInclusive) ? -1 : 1;
+        }
+
+    };
+
+    private static final class Interval {
+
+        final int bucket;
+        final boolean date;
+        final boolean integral;
+        // integral intervals
+        final long lowest;
+        final long highest;
+        // all intervals
+        final double low;
+        final double high;
+        final boolean lowInclusive;
+        final boolean highInclusive;
+
+        Interval(int bucket, boolean date, boolean integral, long lowest, long highest,
+                double low, boolean lowInclusive, double high, boolean highInclusive) {
+            this.bucket = bucket;
+            this.date = date;
+            this.integral = integral;
+            this.lowest = lowest;
+            this.highest = highest;
+            this.low = low;
+            this.high = high;
+            this.lowInclusive = lowInclusive;
+            this.highInclusive = highInclusive;
+        }
+
+        static Interval of(int bucket, Predicate predicate) {
+            if (predicate instanceof QueryParser.RangeCheck) {
+                QueryParser.RangeCheck range = (QueryParser.RangeCheck) predicate;
+                Comparable from = range.getFrom(), to = range.getTo();
+                boolean date = from instanceof Date;
+                if (!(date && to instanceof Date) && !(from instanceof Number && to instanceof Number)) {
+                    return null;
+                }
+                double low = (date) ? ((Date) from).getTime() : ((Number) from).doubleValue();
+                double high = (date) ? ((Date) to).getTime() : ((Number) to).doubleValue();
+                return new Interval(bucket, date, range.isIntegral(), range.lowest(), range.highest(),
+                        low, range.isFromInclusive(), high, range.isToInclusive());
+            }
+            if (predicate instanceof QueryParser.DateCheck && !((QueryParser.DateCheck) predicate).isNot) {
+                long millis = ((QueryParser.DateCheck) predicate).v.getTime();
+                return new Interval(bucket, true, true, millis, millis, millis, true, millis, true);
+            }
+            if (predicate instanceof QueryParser.NumberCheck && !((QueryParser.NumberCheck) predicate).isNot) {
+                Object n = QueryParser.ListCheck.normalize(((QueryParser.NumberCheck) predicate).v);
+                if (n instanceof Long) {
+                    long l = (Long) n;
+                    return new Interval(bucket, false, true, l, l, l, true, l, true);
+                }
+                double d = (Double) n;
+                return new Interval(bucket, false, false, 0, 0, d, true, d, true);
+            }
+            return null;
+        }
+
+        /**
+         * @return whether no value matches, for numbers including those
+         * between whole numbers
+         */
+        boolean isEmpty() {
+            if (date) {
+                return lowest > highest;
+            }
+            return low > high || (low == high && !(lowInclusive && highInclusive));
+        }
+
+        /**
+         * @param before an interval with a lower bound not above this one's
+         * @return whether a number is in both intervals
+         */
+        boolean overlaps(Interval before) {
+            return low < before.high || (low == before.high && lowInclusive && before.highInclusive);
+        }
+
+    }
+
+}
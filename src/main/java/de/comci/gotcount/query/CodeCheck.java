@@ -0,0 +1,137 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Membership of a dictionary code in a set of codes, the bound form of a
+ * string equality or list check, see {@link Filter#bind(java.util.Map)}.
+ *
+ * A single code is compared directly, more codes are kept as a bitset indexed
+ * by code if that is at most twice the size of the sorted codes, else they
+ * are binary searched. So a few large codes, e.g. of a big dictionary, take
+ * no more memory than small ones. A check whose values are all missing from
+ * the dictionary has no codes and is constant: false, or true if negated, it
+ * is bound as a {@link ConstantCheck}.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class CodeCheck implements Predicate<Number>, LongPredicate, DoublePredicate, BatchPredicate, ScanPredicate {
+
+    private final int[] codes; // sorted, distinct
+    private final long[] bits; // null if single or sparse
+    private final int single; // the only code, -1 if none or several
+    private final boolean isNot;
+
+    /**
+     * @param codes codes of the values, negative codes are ignored
+     * @param isNot
+     */
+    CodeCheck(int[] codes, boolean isNot) {
+        int[] sorted = codes.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int code : sorted) {
+            if (code >= 0 && (n == 0 || sorted[n - 1] != code)) {
+                sorted[n++] = code;
+            }
+        }
+        this.codes = Arrays.copyOf(sorted, n);
+        this.single = (n == 1) ? this.codes[0] : -1;
+        if (n > 1 && (this.codes[n - 1] >> 6) < n) {
+            this.bits = new long[(this.codes[n - 1] >> 6) + 1];
+            for (int code : this.codes) {
+                bits[code >> 6] |= 1L << code;
+            }
+        } else {
+            this.bits = null;
+        }
+        this.isNot = isNot;
+    }
+
+    /**
+     * @return true if the result does not depend on the code
+     */
+    public boolean isConstant() {
+        return codes.length == 0;
+    }
+
+    @Override
+    public boolean test(Number code) {
+        return testLong(code.longValue());
+    }
+
+    @Override
+    public boolean testLong(long code) {
+        if (single >= 0) {
+            return (code == single) ^ isNot;
+        }
+        if (bits != null) {
+            return (code >= 0 && code < ((long) bits.length << 6) && (bits[(int) (code >> 6)] & (1L << code)) != 0) ^ isNot;
+        }
+        return (code >= 0 && code <= Integer.MAX_VALUE && Arrays.binarySearch(codes, (int) code) >= 0) ^ isNot;
+    }
+
+    @Override
+    public boolean testDouble(double code) {
+        return (code == (long) code) ? testLong((long) code) : isNot;
+    }
+
+    @Override
+    public void selectLong(long[] values, int offset, int length, long[] selection, boolean and) {
+        Bitmaps.selectLong(this, values, offset, length, selection, and);
+    }
+
+    @Override
+    public void selectInt(int[] values, int offset, int length, long[] selection, boolean and) {
+        Bitmaps.selectInt(this, values, offset, length, selection, and);
+    }
+
+    @Override
+    public void selectDouble(double[] values, int offset, int length, long[] selection, boolean and) {
+        Bitmaps.selectDouble(this, values, offset, length, selection, and);
+    }
+
+    /**
+     * @return lookups of the codes, their complement if negated
+     */
+    @Override
+    public ScanPlan toScanPlan() {
+        ScanPlan plan = ScanPlan.points(codes());
+        return (isNot) ? plan.complement() : plan;
+    }
+
+    private List<Long> codes() {
+        List<Long> list = new ArrayList<>(codes.length);
+        for (int code : codes) {
+            list.add((long) code);
+        }
+        return list;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(codes) + (isNot ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final CodeCheck other = (CodeCheck) obj;
+        return isNot == other.isNot && Arrays.equals(codes, other.codes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Codes(%s,%s)", codes(), isNot);
+    }
+
+}
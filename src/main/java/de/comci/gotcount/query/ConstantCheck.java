@@ -0,0 +1,94 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Collections;
+
+/**
+ * A predicate whose result does not depend on the value, e.g. an empty range
+ * like {@code (5,5)}, see {@link Simplifier}.
+ *
+ * A dimension with a constant true predicate can be skipped, a filter with a
+ * constant false dimension matches nothing, see
+ * {@link Filter#isUnsatisfiable()}.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class ConstantCheck implements Predicate<Object>, LongPredicate, DoublePredicate, BatchPredicate, ScanPredicate {
+
+    public static final ConstantCheck TRUE = new ConstantCheck(true);
+    public static final ConstantCheck FALSE = new ConstantCheck(false);
+
+    public static ConstantCheck of(boolean value) {
+        return (value) ? TRUE : FALSE;
+    }
+
+    private final boolean value;
+
+    private ConstantCheck(boolean value) {
+        this.value = value;
+    }
+
+    public boolean getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean test(Object value) {
+        return this.value;
+    }
+
+    @Override
+    public boolean testLong(long value) {
+        return this.value;
+    }
+
+    @Override
+    public boolean testDouble(double value) {
+        return this.value;
+    }
+
+    @Override
+    public void selectLong(long[] values, int offset, int length, long[] selection, boolean and) {
+        select(length, selection, and);
+    }
+
+    @Override
+    public void selectInt(int[] values, int offset, int length, long[] selection, boolean and) {
+        select(length, selection, and);
+    }
+
+    @Override
+    public void selectDouble(double[] values, int offset, int length, long[] selection, boolean and) {
+        select(length, selection, and);
+    }
+
+    private void select(int length, long[] selection, boolean and) {
+        for (int w = 0, words = Bitmaps.words(length); w < words; w++) {
+            long bits = 0;
+            if (value) {
+                int rest = length - (w << 6);
+                bits = (rest >= 64) ? -1L : (1L << rest) - 1;
+            }
+            Bitmaps.store(selection, w, bits, and);
+        }
+    }
+
+    /**
+     * @return no lookups if false, the complement of none if true
+     */
+    @Override
+    public ScanPlan toScanPlan() {
+        ScanPlan none = ScanPlan.points(Collections.emptyList());
+        return (value) ? none.complement() : none;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Constant(%s)", value);
+    }
+
+}
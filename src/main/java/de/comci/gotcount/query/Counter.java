@@ -0,0 +1,289 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Counts the rows matching a {@link Filter} per {@link Bucket}, for one or
+ * more {@link BucketSet}s per dimension.
+ *
+ * Rows are added to {@link Counts}, which hold one {@code long[]} per bucket
+ * set with the number of matching rows in each of its buckets. A matching row
+ * without a value for a dimension, or with a value in none of the buckets, is
+ * not counted in that set but in {@link Counts#getMatched()}.
+ *
+ * Adding rows to a {@link Counts} on one thread allocates nothing, except
+ * for boxing in bucket sets that are not intervals, see {@link BucketSet}.
+ * The parallel methods count blocks of rows into separate {@link Counts} on
+ * a {@link ForkJoinPool} and merge them when their tasks are joined.
+ *
+ * Instances are immutable and may be shared between threads, {@link Counts}
+ * must not be.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class Counter {
+
+    /**
+     * Rows selected at once when adding columns
+     */
+    static final int BLOCK = 4096;
+
+    /**
+     * Rows per task of the parallel methods
+     */
+    static final int PARALLEL_BLOCK = 1 << 14;
+
+    /**
+     * Adds the counts of the following rows to those of the rows before
+     */
+    private static final BinaryOperator<Counts> ADD_ALL = new BinaryOperator<Counts>() {
+
+        @Override
+        public Counts apply(Counts before, Counts next) {
+            return before.addAll(next);
+        }
+
+    };
+
+    private final Filter filter;
+    // one entry per bucket set
+    private final String[] dimensions;
+    private final BucketSet[] sets;
+    private final Map<String, Integer> first;
+
+    /**
+     * @param filter the rows to count
+     * @param buckets the bucket sets of each dimension
+     */
+    public Counter(Filter filter, Map<String, ? extends List<BucketSet>> buckets) {
+        this.filter = filter;
+        List<String> d = new ArrayList<>();
+        List<BucketSet> s = new ArrayList<>();
+        first = new LinkedHashMap<>();
+        for (Map.Entry<String, ? extends List<BucketSet>> e : buckets.entrySet()) {
+            first.put(e.getKey(), d.size());
+            for (BucketSet set : e.getValue()) {
+                d.add(e.getKey());
+                s.add(set);
+            }
+        }
+        dimensions = d.toArray(new String[d.size()]);
+        sets = s.toArray(new BucketSet[s.size()]);
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return empty counts to add rows to on one thread
+     */
+    public Counts newCounts() {
+        return new Counts();
+    }
+
+    /**
+     * Counts the rows in parallel
+     *
+     * @param columns a long[], int[] or double[] column per dimension of the
+     * filter and of the bucket sets
+     * @param rows number of rows, starting at index 0 of the columns
+     * @param pool
+     * @return the counts of all rows
+     * @throws IllegalArgumentException as {@link Counts#add(Map, int, int)}
+     */
+    public Counts count(final Map<String, ?> columns, int rows, ForkJoinPool pool) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must not be negative");
+        }
+        // fails on the calling thread for missing or unsupported columns
+        newCounts().add(columns, 0, 0);
+        return pool.invoke(BlockTasks.columns(new BlockTasks.ColumnBlock<Counts>() {
+
+            @Override
+            public Counts evaluate(int from, int to) {
+                Counts counts = newCounts();
+                counts.add(columns, from, to - from);
+                return counts;
+            }
+
+        }, ADD_ALL, rows, PARALLEL_BLOCK));
+    }
+
+    /**
+     * Counts the rows in parallel
+     *
+     * @param rows
+     * @param pool
+     * @return the counts of all rows
+     */
+    public Counts count(Spliterator<? extends Row> rows, ForkJoinPool pool) {
+        return pool.invoke(BlockTasks.rows(new BlockTasks.RowBlock<Counts>() {
+
+            @Override
+            public Counts evaluate(Spliterator<? extends Row> rows, long origin) {
+                final Counts counts = newCounts();
+                rows.forEachRemaining(new Consumer<Row>() {
+
+                    @Override
+                    public void accept(Row row) {
+                        counts.add(row);
+                    }
+
+                });
+                counts.evaluator.flushMetrics();
+                return counts;
+            }
+
+        }, ADD_ALL, rows, PARALLEL_BLOCK));
+    }
+
+    /**
+     * Number of matching rows per bucket of each bucket set
+     */
+    public final class Counts {
+
+        private final FilterEvaluator evaluator = filter.compile();
+        private final long[][] counts = new long[sets.length][];
+        private long[] selection;
+        private long matched;
+
+        private Counts() {
+            for (int i = 0; i < sets.length; i++) {
+                counts[i] = new long[sets[i].size()];
+            }
+        }
+
+        /**
+         * @param row counted if it matches the filter
+         */
+        public void add(Row row) {
+            if (!evaluator.test(row)) {
+                return;
+            }
+            matched++;
+            for (int i = 0; i < sets.length; i++) {
+                int bucket = sets[i].indexOf(row.get(dimensions[i]));
+                if (bucket >= 0) {
+                    counts[i][bucket]++;
+                }
+            }
+        }
+
+        /**
+         * Adds a block of rows column-at-a-time, see {@link Filter#select}
+         *
+         * @param columns a long[], int[] or double[] column per dimension of
+         * the filter and of the bucket sets
+         * @param offset index of the first row in the columns
+         * @param length number of rows
+         * @throws IllegalArgumentException if a column is missing or has an
+         * unsupported type, or a predicate of the filter does not support
+         * batch evaluation. Nothing is counted then.
+         */
+        public void add(Map<String, ?> columns, int offset, int length) {
+            if (selection == null) {
+                selection = Bitmaps.allocate(BLOCK);
+            }
+            filter.select(columns, offset, 0, selection);
+            for (String dimension : dimensions) {
+                Object column = columns.get(dimension);
+                if (!(column instanceof long[] || column instanceof int[] || column instanceof double[])) {
+                    throw new IllegalArgumentException("no long[], int[] or double[] column for dimension " + dimension);
+                }
+            }
+            for (int start = offset, end = offset + length; start < end; start += BLOCK) {
+                int n = Math.min(BLOCK, end - start);
+                int words = Bitmaps.words(n);
+                filter.select(columns, start, n, selection);
+                // words after the block's last may hold a previous block
+                for (int w = 0; w < words; w++) {
+                    matched += Long.bitCount(selection[w]);
+                }
+                for (int i = 0; i < sets.length; i++) {
+                    addBlock(columns.get(dimensions[i]), sets[i], counts[i], start, words);
+                }
+            }
+        }
+
+        private void addBlock(Object column, BucketSet set, long[] count, int start, int words) {
+            for (int w = 0; w < words; w++) {
+                for (long word = selection[w]; word != 0; word &= word - 1) {
+                    int row = start + (w << 6) + Long.numberOfTrailingZeros(word);
+                    int bucket;
+                    if (column instanceof long[]) {
+                        bucket = set.indexOf(((long[]) column)[row]);
+                    } else if (column instanceof int[]) {
+                        bucket = set.indexOf((long) ((int[]) column)[row]);
+                    } else {
+                        bucket = set.indexOf(((double[]) column)[row]);
+                    }
+                    if (bucket >= 0) {
+                        count[bucket]++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the counts of other, e.g. counted on another thread
+         *
+         * @param other counts of the same counter
+         * @return this
+         */
+        public Counts addAll(Counts other) {
+            if (other.counter() != Counter.this) {
+                throw new IllegalArgumentException("counts of another counter");
+            }
+            matched += other.matched;
+            for (int i = 0; i < counts.length; i++) {
+                for (int j = 0; j < counts[i].length; j++) {
+                    counts[i][j] += other.counts[i][j];
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return number of rows matching the filter
+         */
+        public long getMatched() {
+            return matched;
+        }
+
+        /**
+         * @param dimension
+         * @param set index of the bucket set among those of the dimension
+         * @return the number of matching rows per bucket, in the order of
+         * {@link BucketSet#getBuckets()}
+         * @throws NoSuchElementException if there is no such bucket set
+         */
+        public long[] get(String dimension, int set) {
+            Integer i = first.get(dimension);
+            if (i == null || set < 0 || i + set >= dimensions.length || !dimensions[i + set].equals(dimension)) {
+                throw new NoSuchElementException();
+            }
+            return Arrays.copyOf(counts[i + set], counts[i + set].length);
+        }
+
+        private Counter counter() {
+            return Counter.this;
+        }
+
+    }
+
+}
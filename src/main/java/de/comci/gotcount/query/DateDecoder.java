@@ -0,0 +1,170 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Decodes the fixed-pattern date ({@code yyyy-MM-dd}) and time
+ * ({@code HH:mm[:ss]}) literals of the grammar from their digits, without a
+ * {@link java.text.SimpleDateFormat} per value.
+ *
+ * The digits must already have been validated by the grammar. Results equal
+ * those of a lenient SimpleDateFormat in the decoder's zone: months and days
+ * out of range roll over, dates before 1582-10-15 use the Julian calendar,
+ * and a local time in a daylight saving overlap resolves to standard time. A
+ * time without date is taken on 1970-01-01.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class DateDecoder {
+
+    private static final int SECONDS_PER_DAY = 86400;
+
+    /**
+     * Before this year {@link GregorianCalendar} and java.time disagree: the
+     * calendar switches to Julian before 1582-10-15 and {@link TimeZone} has
+     * no zone history before 1900, so earlier dates go through the calendar
+     */
+    private static final int FIRST_ZONE_RULES_YEAR = 1901;
+
+    private static final DateDecoder DEFAULT = new DateDecoder(ZoneId.systemDefault());
+
+    /**
+     * @return the decoder in the system default zone at class loading, used
+     * by the parsers unless another one is passed, e.g. to
+     * {@link Filter#parse(String, ParserEngine, ParseLimits, DateDecoder)}
+     */
+    public static DateDecoder getDefault() {
+        return DEFAULT;
+    }
+
+    public static DateDecoder of(ZoneId zone) {
+        return new DateDecoder(zone);
+    }
+
+    private final ZoneId zone;
+    private final ZoneOffset fixedOffset;
+
+    private DateDecoder(ZoneId zone) {
+        if (zone == null) {
+            throw new IllegalArgumentException("zone must not be null");
+        }
+        this.zone = zone;
+        this.fixedOffset = zone.getRules().isFixedOffset() ? zone.getRules().getOffset(LocalDateTime.MIN) : null;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @param s contains a date {@code yyyy-MM-dd} at from
+     * @param from
+     * @return the start of the day in this decoder's zone as epoch millis
+     */
+    public long dateMillis(CharSequence s, int from) {
+        int year = digits(s, from, 4);
+        int month = digits(s, from + 5, 2);
+        int day = digits(s, from + 8, 2);
+        if (year < FIRST_ZONE_RULES_YEAR) {
+            return calendarMillis(year, month, day);
+        }
+        return toEpochMillis(epochDay(year, month, day) * SECONDS_PER_DAY);
+    }
+
+    /**
+     * @param s contains a time {@code HH:mm} or {@code HH:mm:ss} from from
+     * to to
+     * @param from
+     * @param to
+     * @return the time on 1970-01-01 in this decoder's zone as epoch millis
+     */
+    public long timeMillis(CharSequence s, int from, int to) {
+        return toEpochMillis(secondOfDay(s, from, to));
+    }
+
+    /**
+     * @param s contains a date {@code yyyy-MM-dd} at from
+     * @param from
+     * @return the date, rolled over like {@link #dateMillis} but in the ISO
+     * calendar
+     */
+    public static LocalDate localDate(CharSequence s, int from) {
+        return LocalDate.ofEpochDay(epochDay(digits(s, from, 4), digits(s, from + 5, 2), digits(s, from + 8, 2)));
+    }
+
+    /**
+     * @param s contains a time {@code HH:mm} or {@code HH:mm:ss} from from
+     * to to
+     * @param from
+     * @param to
+     * @return
+     */
+    public static LocalTime localTime(CharSequence s, int from, int to) {
+        return LocalTime.ofSecondOfDay(secondOfDay(s, from, to));
+    }
+
+    private long toEpochMillis(long localSeconds) {
+        if (fixedOffset != null) {
+            return (localSeconds - fixedOffset.getTotalSeconds()) * 1000;
+        }
+        LocalDateTime local = LocalDateTime.ofEpochSecond(localSeconds, 0, ZoneOffset.UTC);
+        // GregorianCalendar takes the standard, i.e. later, offset in an overlap
+        return ZonedDateTime.ofLocal(local, zone, null).withLaterOffsetAtOverlap().toEpochSecond() * 1000;
+    }
+
+    private long calendarMillis(int year, int month, int day) {
+        GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone(zone));
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTimeInMillis();
+    }
+
+    private static int secondOfDay(CharSequence s, int from, int to) {
+        int seconds = digits(s, from, 2) * 3600 + digits(s, from + 3, 2) * 60;
+        if (to - from > 5) {
+            seconds += digits(s, from + 6, 2);
+        }
+        return seconds;
+    }
+
+    /**
+     * Days since 1970-01-01 of the proleptic Gregorian date, months and days
+     * beyond their range roll over into the following months and years
+     */
+    static long epochDay(int year, int month, int day) {
+        long y = year + Math.floorDiv(month - 1, 12);
+        int m = Math.floorMod(month - 1, 12) + 1;
+        // days from civil, counted in eras of 400 years starting in March
+        if (m <= 2) {
+            y--;
+        }
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (m + ((m > 2) ? -3 : 9)) + 2) / 5;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468 + day - 1;
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,17 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Allocation free evaluation of a {@link Predicate} on a double value
+ * 
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface DoublePredicate {
+    
+    boolean testDouble(double test);
+    
+}
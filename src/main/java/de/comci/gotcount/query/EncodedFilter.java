@@ -0,0 +1,753 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link Filter} or {@link Bucket} in a compact binary encoding, evaluated
+ * in place in a heap, direct or memory-mapped {@link ByteBuffer}.
+ *
+ * Only the dimension names and the offsets of their predicates are read when
+ * wrapping, tests read the constants from the buffer: list members are stored
+ * sorted and searched binary, with their original order alongside, strings
+ * are compared in their UTF-8 encoding.
+ * {@link #toFilter()} and {@link #toBucket()} decode predicates equal to the
+ * encoded ones.
+ *
+ * The encoding, big-endian:
+ * <pre>
+ * filter    := version:u8 count:u16 dimension*
+ * dimension := nameLength:u16 name:utf8 size:i32 predicate
+ * predicate := kind:u8 flags:u8 payload
+ * </pre>
+ * where flags holds the negation, the inclusive bounds of a range or the
+ * value of a constant, and the payload holds the typed constants of the kind,
+ * see {@link #encode(Filter, ByteBuffer)}.
+ *
+ * Evaluation matches the predicates for values of the types they are built
+ * for. A value of another type, which the parsed predicate rejects with an
+ * exception, matches neither the predicate nor its negation, e.g.
+ * {@code name:!abc} does not match 5 and {@code r:[0,19]} does not match the
+ * Integer 5. Lists accept values of any type like
+ * the parsed ones, so a negated list matches values of other types. A missing
+ * value never matches.
+ *
+ * An instance reads from its own view of the buffer and may be shared between
+ * threads as long as the encoded bytes do not change.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class EncodedFilter implements RowFilter {
+
+    private static final byte VERSION = 1;
+
+    // predicate kinds
+    private static final byte CONSTANT = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte DATE = 4;
+    private static final byte RANGE = 5;
+    private static final byte LIST = 6;
+    // list members of different types, each with its type
+    private static final byte MIXED = 7;
+
+    // flags
+    private static final int NOT = 1;
+    private static final int FROM_INCLUSIVE = 2;
+    private static final int TO_INCLUSIVE = 4;
+    // list members not in sorted order, their positions are stored
+    private static final int REORDERED = 8;
+
+    private static final int MAX_UNSIGNED_SHORT = 0xffff;
+
+    /**
+     * @param filter
+     * @return number of bytes {@link #encode(Filter, ByteBuffer)} writes
+     * @throws IllegalArgumentException if a predicate cannot be encoded
+     */
+    public static int encodedSize(Filter filter) {
+        return toBytes(filter).length;
+    }
+
+    /**
+     * Writes the filter at the position of out and advances it
+     *
+     * @param filter
+     * @param out
+     * @throws IllegalArgumentException if a predicate cannot be encoded, e.g.
+     * a bound {@link CodeCheck}
+     * @throws java.nio.BufferOverflowException if out has less than
+     * {@link #encodedSize(Filter)} bytes remaining
+     */
+    public static void encode(Filter filter, ByteBuffer out) {
+        out.put(toBytes(filter));
+    }
+
+    public static int encodedSize(Bucket bucket) {
+        return toBytes(bucket).length;
+    }
+
+    /**
+     * Writes the bucket as a filter of one dimension named like the bucket
+     *
+     * @param bucket
+     * @param out
+     */
+    public static void encode(Bucket bucket, ByteBuffer out) {
+        out.put(toBytes(bucket));
+    }
+
+    private static byte[] toBytes(Filter filter) {
+        Map<String, Predicate> sorted = new TreeMap<>();
+        for (String dimension : filter.getDimensions()) {
+            sorted.put(dimension, filter.getPredicate(dimension));
+        }
+        return toBytes(sorted);
+    }
+
+    private static byte[] toBytes(Bucket bucket) {
+        return toBytes(Collections.singletonMap(bucket.getName(), bucket.getPredicate()));
+    }
+
+    private static byte[] toBytes(Map<String, Predicate> predicates) {
+        if (predicates.size() > MAX_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException("too many dimensions to encode: " + predicates.size());
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeShort(predicates.size());
+            for (Map.Entry<String, Predicate> e : predicates.entrySet()) {
+                writeString(out, e.getKey());
+                byte[] predicate = toBytes(e.getKey(), e.getValue());
+                out.writeInt(predicate.length);
+                out.write(predicate);
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // not thrown in memory
+        }
+    }
+
+    private static byte[] toBytes(String dimension, Predicate predicate) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (predicate instanceof ConstantCheck) {
+            out.writeByte(CONSTANT);
+            out.writeByte(((ConstantCheck) predicate).getValue() ? NOT : 0);
+        } else if (predicate instanceof QueryParser.RangeCheck) {
+            QueryParser.RangeCheck range = (QueryParser.RangeCheck) predicate;
+            byte type = typeOf(range.getFrom());
+            if (type != typeOf(range.getTo()) || type == STRING || type == MIXED) {
+                throw cannotEncode(dimension, predicate);
+            }
+            out.writeByte(RANGE);
+            out.writeByte((range.isFromInclusive() ? FROM_INCLUSIVE : 0) | (range.isToInclusive() ? TO_INCLUSIVE : 0));
+            out.writeByte(type);
+            writeValue(out, type, range.getFrom());
+            writeValue(out, type, range.getTo());
+        } else if (predicate instanceof QueryParser.ListCheck) {
+            QueryParser.ListCheck<?> list = (QueryParser.ListCheck<?>) predicate;
+            if (list.type != Object.class) {
+                throw cannotEncode(dimension, predicate);
+            }
+            out.writeByte(LIST);
+            writeMembers(out, dimension, predicate, (List<?>) list.v, list.isNot ? NOT : 0);
+        } else if (predicate instanceof QueryParser.DefaultCheck) {
+            QueryParser.DefaultCheck<?> check = (QueryParser.DefaultCheck<?>) predicate;
+            byte type = typeOf(check.v);
+            boolean expected = (predicate instanceof QueryParser.NumberCheck) ? type == LONG || type == DOUBLE
+                    : (predicate instanceof QueryParser.DateCheck) ? type == DATE
+                    : predicate.getClass() == QueryParser.DefaultCheck.class && type == STRING && check.type == String.class;
+            if (!expected) {
+                throw cannotEncode(dimension, predicate);
+            }
+            out.writeByte(type);
+            out.writeByte(check.isNot ? NOT : 0);
+            writeValue(out, type, check.v);
+        } else {
+            throw cannotEncode(dimension, predicate);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * flags:u8 type:u8 count:i32, then for members of one type a sorted
+     * array, preceded by the i32 position of each member in it unless the
+     * members are sorted already, strings as a table of i32 offsets into the
+     * following strings, and for mixed types type:u8 value per member
+     */
+    private static void writeMembers(DataOutputStream out, String dimension, Predicate predicate, List<?> members, int flags) throws IOException {
+        byte type = (members.isEmpty()) ? LONG : typeOf(members.get(0));
+        for (Object member : members) {
+            byte memberType = typeOf(member);
+            if (memberType == MIXED) {
+                throw cannotEncode(dimension, predicate);
+            }
+            if (memberType != type) {
+                type = MIXED;
+            }
+        }
+        int[] positions = (type == MIXED) ? null : positions(members,
+                (type == DOUBLE) ? BY_DOUBLE : (type == STRING) ? BY_STRING : BY_LONG);
+        List<Object> sorted = new ArrayList<>(members.size());
+        boolean reordered = false;
+        if (positions != null) {
+            sorted.addAll(Collections.nCopies(members.size(), null));
+            for (int i = 0; i < positions.length; i++) {
+                sorted.set(positions[i], members.get(i));
+                reordered |= positions[i] != i;
+            }
+        }
+        out.writeByte(flags | (reordered ? REORDERED : 0));
+        out.writeByte(type);
+        out.writeInt(members.size());
+        if (reordered) {
+            for (int position : positions) {
+                out.writeInt(position);
+            }
+        }
+        switch (type) {
+            case LONG:
+            case DATE:
+            case DOUBLE:
+                for (Object member : sorted) {
+                    writeValue(out, type, member);
+                }
+                break;
+            case STRING:
+                int offset = 0;
+                for (Object member : sorted) {
+                    out.writeInt(offset);
+                    offset += 2 + ((String) member).getBytes(StandardCharsets.UTF_8).length;
+                }
+                for (Object member : sorted) {
+                    writeString(out, (String) member);
+                }
+                break;
+            default:
+                for (Object member : members) {
+                    byte memberType = typeOf(member);
+                    out.writeByte(memberType);
+                    writeValue(out, memberType, member);
+                }
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        if (value instanceof String) {
+            return STRING;
+        }
+        if (value instanceof Long) {
+            return LONG;
+        }
+        if (value instanceof Double) {
+            return DOUBLE;
+        }
+        if (value instanceof Date) {
+            return DATE;
+        }
+        return MIXED; // not encodable on its own
+    }
+
+    private static void writeValue(DataOutputStream out, byte type, Object value) throws IOException {
+        switch (type) {
+            case STRING:
+                writeString(out, (String) value);
+                break;
+            case LONG:
+                out.writeLong((Long) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            default:
+                out.writeLong(((Date) value).getTime());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length > MAX_UNSIGNED_SHORT) {
+            throw new IllegalArgumentException("string too long to encode: " + utf8.length + " bytes");
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static IllegalArgumentException cannotEncode(String dimension, Predicate predicate) {
+        return new IllegalArgumentException(String.format("cannot encode %s of dimension %s", predicate, dimension));
+    }
+
+    /**
+     * @return the position of each member in the sorted order, stable for
+     * equal members
+     */
+    private static int[] positions(final List<?> members, final Comparator<Object> order) {
+        Integer[] byValue = new Integer[members.size()];
+        for (int i = 0; i < byValue.length; i++) {
+            byValue[i] = i;
+        }
+        Arrays.sort(byValue, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return order.compare(members.get(a), members.get(b));
+            }
+
+        });
+        int[] positions = new int[byValue.length];
+        for (int j = 0; j < byValue.length; j++) {
+            positions[byValue[j]] = j;
+        }
+        return positions;
+    }
+
+    private static final Comparator<Object> BY_LONG = new Comparator<Object>() {
+
+        @Override
+        public int compare(Object a, Object b) {
+            return Long.compare(longValue(a), longValue(b));
+        }
+
+    };
+
+    private static final Comparator<Object> BY_DOUBLE = new Comparator<Object>() {
+
+        @Override
+        public int compare(Object a, Object b) {
+            return Double.compare((Double) a + 0.0, (Double) b + 0.0); // no -0.0
+        }
+
+    };
+
+    private static final Comparator<Object> BY_STRING = new Comparator<Object>() {
+
+        @Override
+        public int compare(Object a, Object b) {
+            return ((String) a).compareTo((String) b);
+        }
+
+    };
+
+    private static long longValue(Object value) {
+        return (value instanceof Date) ? ((Date) value).getTime() : (Long) value;
+    }
+
+    /**
+     * Reads the encoded filter at the position of in and advances the
+     * position past it, so consecutive filters can be wrapped one after the
+     * other
+     *
+     * @param in
+     * @return
+     * @throws IllegalArgumentException if the bytes are not an encoded filter
+     */
+    public static EncodedFilter wrap(ByteBuffer in) {
+        EncodedFilter filter = new EncodedFilter(in.duplicate().order(ByteOrder.BIG_ENDIAN), in.position());
+        in.position(filter.end);
+        return filter;
+    }
+
+    private final ByteBuffer buffer;
+    private final String[] names;
+    private final int[] offsets; // of the predicates
+    private final int start;
+    private final int end;
+
+    private EncodedFilter(ByteBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        if (buffer.get(start) != VERSION) {
+            throw new IllegalArgumentException("not an encoded filter of version " + VERSION);
+        }
+        int count = buffer.getShort(start + 1) & MAX_UNSIGNED_SHORT;
+        names = new String[count];
+        offsets = new int[count];
+        int at = start + 3;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(at) & MAX_UNSIGNED_SHORT;
+            names[i] = readString(at + 2, length);
+            at += 2 + length;
+            int size = buffer.getInt(at);
+            offsets[i] = at + 4;
+            at += 4 + size;
+        }
+        end = at;
+    }
+
+    /**
+     * @return the number of dimensions, 1 for a bucket
+     */
+    public int getDimensionCount() {
+        return names.length;
+    }
+
+    /**
+     * @param index
+     * @return the name of a dimension, dimensions are in their natural order
+     */
+    public String getDimension(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return the number of bytes of the encoding
+     */
+    public int getEncodedSize() {
+        return end - start;
+    }
+
+    /**
+     * @param row
+     * @return true if the row has a matching value for every dimension
+     */
+    @Override
+    public boolean test(Row row) {
+        for (int i = 0; i < names.length; i++) {
+            if (!test(i, row.get(names[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param index of the dimension
+     * @param value
+     * @return whether the predicate of the dimension matches the value, false
+     * for null or a value of another type
+     */
+    public boolean test(int index, Object value) {
+        if (value == null) {
+            return false;
+        }
+        int at = offsets[index];
+        byte kind = buffer.get(at);
+        int flags = buffer.get(at + 1);
+        boolean isNot = (flags & NOT) != 0;
+        at += 2;
+        switch (kind) {
+            case CONSTANT:
+                return isNot;
+            case STRING:
+                return value instanceof String
+                        && (compareString(at + 2, buffer.getShort(at) & MAX_UNSIGNED_SHORT, (String) value) == 0) ^ isNot;
+            case LONG:
+            case DOUBLE:
+                return value instanceof Number && (doubleAt(kind, at) == ((Number) value).doubleValue()) ^ isNot;
+            case DATE:
+                return value instanceof Date && (buffer.getLong(at) == ((Date) value).getTime()) ^ isNot;
+            case RANGE:
+                return testRange(flags, buffer.get(at), at + 1, value);
+            case LIST:
+                return testList(flags, at, value) ^ isNot;
+            default:
+                throw new IllegalStateException("unknown predicate kind " + kind);
+        }
+    }
+
+    private double doubleAt(byte type, int at) {
+        return (type == LONG) ? buffer.getLong(at) : buffer.getDouble(at);
+    }
+
+    /**
+     * Same rules as {@link QueryParser.RangeCheck}: the value has the class of
+     * the bounds, doubles are ordered by {@link Double#compare}
+     */
+    private boolean testRange(int flags, byte type, int at, Object value) {
+        boolean fromInclusive = (flags & FROM_INCLUSIVE) != 0;
+        boolean toInclusive = (flags & TO_INCLUSIVE) != 0;
+        int lower, upper;
+        switch (type) {
+            case LONG:
+            case DATE:
+                if (!((type == LONG) ? value instanceof Long : value instanceof Date)) {
+                    return false;
+                }
+                long v = (type == DATE) ? ((Date) value).getTime() : (Long) value;
+                lower = Long.compare(v, buffer.getLong(at));
+                upper = Long.compare(v, buffer.getLong(at + 8));
+                break;
+            case DOUBLE:
+                if (!(value instanceof Double)) {
+                    return false;
+                }
+                double d = (Double) value;
+                lower = Double.compare(d, buffer.getDouble(at));
+                upper = Double.compare(d, buffer.getDouble(at + 8));
+                break;
+            default:
+                return false;
+        }
+        return (lower > 0 || (fromInclusive && lower == 0)) && (upper < 0 || (toInclusive && upper == 0));
+    }
+
+    private boolean testList(int flags, int at, Object value) {
+        byte type = buffer.get(at);
+        int count = buffer.getInt(at + 1);
+        int members = ((flags & REORDERED) != 0) ? at + 5 + count * 4 : at + 5;
+        switch (type) {
+            case LONG:
+                Object n = (value instanceof Number) ? QueryParser.ListCheck.normalize(value) : null;
+                return n instanceof Long && searchLong(members, count, (Long) n);
+            case DATE:
+                return value instanceof Date && searchLong(members, count, ((Date) value).getTime());
+            case DOUBLE:
+                return value instanceof Number && searchDouble(members, count, ((Number) value).doubleValue() + 0.0);
+            case STRING:
+                return value instanceof String && searchString(members, count, (String) value);
+            default:
+                return scanMixed(members, count, value);
+        }
+    }
+
+    private boolean searchLong(int at, int count, long key) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long v = buffer.getLong(at + mid * 8);
+            if (v < key) {
+                low = mid + 1;
+            } else if (v > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean searchDouble(int at, int count, double key) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = Double.compare(buffer.getDouble(at + mid * 8) + 0.0, key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean searchString(int at, int count, String key) {
+        int strings = at + count * 4;
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int member = strings + buffer.getInt(at + mid * 4);
+            int c = compareString(member + 2, buffer.getShort(member) & MAX_UNSIGNED_SHORT, key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean scanMixed(int at, int count, Object value) {
+        for (int i = 0; i < count; i++) {
+            byte type = buffer.get(at++);
+            switch (type) {
+                case STRING:
+                    int length = buffer.getShort(at) & MAX_UNSIGNED_SHORT;
+                    if (value instanceof String && compareString(at + 2, length, (String) value) == 0) {
+                        return true;
+                    }
+                    at += 2 + length;
+                    break;
+                case DATE:
+                    if (value instanceof Date && buffer.getLong(at) == ((Date) value).getTime()) {
+                        return true;
+                    }
+                    at += 8;
+                    break;
+                default:
+                    if (value instanceof Number && doubleAt(type, at) == ((Number) value).doubleValue()) {
+                        return true;
+                    }
+                    at += 8;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the UTF-8 encoded string at with the key in the order of
+     * {@link String#compareTo}, without decoding it into a String
+     */
+    private int compareString(int at, int length, String key) {
+        int end = at + length;
+        int j = 0;
+        while (at < end) {
+            int b = buffer.get(at) & 0xff;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                at += 1;
+            } else if (b < 0xe0) {
+                codePoint = ((b & 0x1f) << 6) | (buffer.get(at + 1) & 0x3f);
+                at += 2;
+            } else if (b < 0xf0) {
+                codePoint = ((b & 0x0f) << 12) | ((buffer.get(at + 1) & 0x3f) << 6) | (buffer.get(at + 2) & 0x3f);
+                at += 3;
+            } else {
+                codePoint = ((b & 0x07) << 18) | ((buffer.get(at + 1) & 0x3f) << 12)
+                        | ((buffer.get(at + 2) & 0x3f) << 6) | (buffer.get(at + 3) & 0x3f);
+                at += 4;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (j == key.length()) {
+                    return 1;
+                }
+                int c = codePoint - key.charAt(j++);
+                if (c != 0) {
+                    return c;
+                }
+            } else {
+                char[] units = {Character.highSurrogate(codePoint), Character.lowSurrogate(codePoint)};
+                for (char unit : units) {
+                    if (j == key.length()) {
+                        return 1;
+                    }
+                    int c = unit - key.charAt(j++);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+            }
+        }
+        return (j == key.length()) ? 0 : -1;
+    }
+
+    private String readString(int at, int length) {
+        byte[] utf8 = new byte[length];
+        for (int i = 0; i < length; i++) {
+            utf8[i] = buffer.get(at + i);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a filter with predicates equal to the encoded ones
+     */
+    public Filter toFilter() {
+        Map<String, Predicate> predicates = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            predicates.put(names[i], decode(offsets[i]));
+        }
+        return new Filter(predicates);
+    }
+
+    /**
+     * @return the bucket encoded by {@link #encode(Bucket, ByteBuffer)}
+     * @throws IllegalStateException if this is a filter of more or less than
+     * one dimension
+     */
+    public Bucket toBucket() {
+        if (names.length != 1) {
+            throw new IllegalStateException("not a bucket: " + names.length + " dimensions");
+        }
+        return new Bucket(new AbstractMap.SimpleImmutableEntry<>(names[0], decode(offsets[0])));
+    }
+
+    private Predicate decode(int at) {
+        byte kind = buffer.get(at);
+        int flags = buffer.get(at + 1);
+        boolean isNot = (flags & NOT) != 0;
+        at += 2;
+        switch (kind) {
+            case CONSTANT:
+                return ConstantCheck.of(isNot);
+            case STRING:
+                return new QueryParser.DefaultCheck<>((String) readValue(STRING, at), isNot, String.class);
+            case LONG:
+            case DOUBLE:
+                return new QueryParser.NumberCheck((Number) readValue(kind, at), isNot);
+            case DATE:
+                return new QueryParser.DateCheck((Date) readValue(DATE, at), isNot);
+            case RANGE:
+                byte type = buffer.get(at);
+                return new QueryParser.RangeCheck((Comparable) readValue(type, at + 1), (flags & FROM_INCLUSIVE) != 0,
+                        (Comparable) readValue(type, at + 9), (flags & TO_INCLUSIVE) != 0);
+            case LIST:
+                return new QueryParser.ListCheck<Object>(readMembers(flags, at), isNot, Object.class);
+            default:
+                throw new IllegalStateException("unknown predicate kind " + kind);
+        }
+    }
+
+    private List<Object> readMembers(int flags, int at) {
+        byte type = buffer.get(at);
+        int count = buffer.getInt(at + 1);
+        at += 5;
+        List<Object> members = new ArrayList<>(count);
+        if (type == MIXED) {
+            for (int i = 0; i < count; i++) {
+                byte memberType = buffer.get(at++);
+                members.add(readValue(memberType, at));
+                at += (memberType == STRING) ? 2 + (buffer.getShort(at) & MAX_UNSIGNED_SHORT) : 8;
+            }
+            return members;
+        }
+        boolean reordered = (flags & REORDERED) != 0;
+        int sorted = (reordered) ? at + count * 4 : at;
+        for (int i = 0; i < count; i++) {
+            int position = (reordered) ? buffer.getInt(at + i * 4) : i;
+            if (type == STRING) {
+                int strings = sorted + count * 4;
+                members.add(readValue(STRING, strings + buffer.getInt(sorted + position * 4)));
+            } else {
+                members.add(readValue(type, sorted + position * 8));
+            }
+        }
+        return members;
+    }
+
+    private Object readValue(byte type, int at) {
+        switch (type) {
+            case STRING:
+                return readString(at + 2, buffer.getShort(at) & MAX_UNSIGNED_SHORT);
+            case LONG:
+                return buffer.getLong(at);
+            case DOUBLE:
+                return buffer.getDouble(at);
+            default:
+                return new Date(buffer.getLong(at));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedFilter" + Arrays.toString(names);
+    }
+
+}
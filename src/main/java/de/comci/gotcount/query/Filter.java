@@ -5,17 +5,27 @@
  */
 package de.comci.gotcount.query;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import org.parboiled.Parboiled;
-import org.parboiled.parserunners.ReportingParseRunner;
 
 /**
  * Filter constructs the predicate set based on a query string
  * 
+ * The parsed predicates are simplified, see {@link Simplifier}. A list of one
+ * member is the same predicate as the member on its own, so it tests values
+ * of the member's type only: {@code s:{abc}} and {@code s:!{abc}} throw an
+ * {@link IllegalArgumentException} for a number like {@code s:abc} does, and
+ * {@code n:{5}} throws a {@link ClassCastException} for a string like
+ * {@code n:5}. Lists of more members accept values of any type.
+ * 
+ * Instances are immutable and may be shared between threads.
+ * 
  * @author Sebastian Maier (sebastian.maier@comci.de)
  */
 public class Filter {
@@ -24,12 +34,69 @@ public class Filter {
         return new Filter(input);
     }
     
+    public static Filter fromString(String input, ParserEngine engine) {
+        return new Filter(input, engine);
+    }
+    
+    /**
+     * @param input
+     * @param engine
+     * @param decoder decodes the date and time literals, e.g. in a zone other
+     * than the system default
+     * @return
+     */
+    public static Filter fromString(String input, ParserEngine engine, DateDecoder decoder) {
+        return new Filter(input, engine, decoder);
+    }
+    
+    /**
+     * Parses the whole input, failing on invalid input instead of returning
+     * a filter without dimensions like {@link #fromString(String)}, see
+     * {@link ParseLimits#DEFAULT}. With {@link ParserEngine#PARBOILED} input
+     * that does not match is parsed a second time to report where it failed.
+     * 
+     * @param input
+     * @return
+     * @throws QueryParseException if the input does not match or exceeds the
+     * limits
+     */
+    public static Filter parse(String input) {
+        return parse(input, ParserEngine.PARBOILED, ParseLimits.DEFAULT);
+    }
+    
+    public static Filter parse(String input, ParserEngine engine) {
+        return parse(input, engine, ParseLimits.DEFAULT);
+    }
+    
+    public static Filter parse(String input, ParserEngine engine, ParseLimits limits) {
+        return parse(input, engine, limits, DateDecoder.getDefault());
+    }
+    
+    public static Filter parse(String input, ParserEngine engine, ParseLimits limits, DateDecoder decoder) {
+        return new Filter(engine.strictQuery(input, limits, decoder));
+    }
+    
     private final Map<String, Predicate> map;
 
     public Filter(String input) {
-        QueryParser parser = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> reportingParseRunner = new ReportingParseRunner<>(parser.Query());
-        map = (Map)reportingParseRunner.run(input).resultValue;        
+        this(input, ParserEngine.PARBOILED);
+    }
+
+    public Filter(String input, ParserEngine engine) {
+        this(input, engine, DateDecoder.getDefault());
+    }
+
+    public Filter(String input, ParserEngine engine, DateDecoder decoder) {
+        this(engine.query(input, decoder));
+    }
+
+    /**
+     * @param parsed the predicates by dimension as returned by
+     * {@link ParserEngine#query}, null if the input did not match, see
+     * {@link Simplifier}
+     */
+    Filter(Map<String, Predicate> parsed) {
+        map = (parsed == null) ? null : Collections.unmodifiableMap(Simplifier.simplify(parsed));
     }
     
     public Set<String> getDimensions() {
@@ -40,10 +107,147 @@ public class Filter {
     }
     
     public Predicate getPredicate(String dimension) {
-        if (!map.containsKey(dimension)) {
+        if (map == null || !map.containsKey(dimension)) {
             throw new NoSuchElementException();
         }
         return map.get(dimension);
     }
     
+    /**
+     * @return true if a dimension is constant false, so no row can match
+     * and the query can be skipped
+     */
+    public boolean isUnsatisfiable() {
+        return map != null && map.containsValue(ConstantCheck.FALSE);
+    }
+    
+    /**
+     * @return the dimensions whose predicate is not constant true, only
+     * these need to be tested on rows having all dimensions
+     */
+    public Set<String> getConstrainedDimensions() {
+        Set<String> constrained = new HashSet<>();
+        for (String dimension : getDimensions()) {
+            if (map.get(dimension) != ConstantCheck.TRUE) {
+                constrained.add(dimension);
+            }
+        }
+        return Collections.unmodifiableSet(constrained);
+    }
+    
+    /**
+     * Binds string dimensions to the dictionaries of a dictionary encoded
+     * store. String equality and string list checks of a dimension with a
+     * dictionary become {@link CodeCheck}s over codes, which are tested once
+     * per row as int instead of String, e.g. by {@link #select} on int[] code
+     * columns. A check whose values are all missing from the dictionary is
+     * constant, see {@link ConstantCheck}. Other dimensions are kept.
+     *
+     * @param dictionaries dictionary by dimension
+     * @return the bound filter, whose bound dimensions take codes
+     */
+    public Filter bind(Map<String, ? extends StringDictionary> dictionaries) {
+        Map<String, Predicate> bound = new HashMap<>();
+        for (String dimension : getDimensions()) {
+            Predicate predicate = map.get(dimension);
+            StringDictionary dictionary = dictionaries.get(dimension);
+            List<String> values = (dictionary == null) ? null : stringValues(predicate);
+            if (values != null) {
+                int[] codes = new int[values.size()];
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = dictionary.code(values.get(i));
+                }
+                boolean isNot = ((QueryParser.DefaultCheck) predicate).isNot;
+                CodeCheck check = new CodeCheck(codes, isNot);
+                predicate = (check.isConstant()) ? ConstantCheck.of(isNot) : check;
+            }
+            bound.put(dimension, predicate);
+        }
+        return new Filter(bound);
+    }
+
+    /**
+     * @return the values of a string equality or string list check, null for
+     * any other predicate
+     */
+    private static List<String> stringValues(Predicate predicate) {
+        if (predicate.getClass() == QueryParser.DefaultCheck.class) {
+            Object v = ((QueryParser.DefaultCheck) predicate).v;
+            return (v instanceof String) ? Collections.singletonList((String) v) : null;
+        }
+        if (predicate instanceof QueryParser.ListCheck) {
+            List<String> values = new ArrayList<>();
+            for (Object member : (List<?>) ((QueryParser.ListCheck) predicate).v) {
+                if (!(member instanceof String)) {
+                    return null;
+                }
+                values.add((String) member);
+            }
+            return values;
+        }
+        return null;
+    }
+    
+    /**
+     * @return the scan plan of every dimension, see {@link ScanPlan}
+     * @throws IllegalArgumentException if a predicate cannot describe its
+     * keys
+     */
+    public Map<String, ScanPlan> getScanPlans() {
+        Map<String, ScanPlan> plans = new HashMap<>();
+        for (String dimension : getDimensions()) {
+            Predicate predicate = map.get(dimension);
+            if (!(predicate instanceof ScanPredicate)) {
+                throw new IllegalArgumentException("no scan plan for dimension " + dimension);
+            }
+            plans.put(dimension, ((ScanPredicate) predicate).toScanPlan());
+        }
+        return Collections.unmodifiableMap(plans);
+    }
+    
+    /**
+     * @return an evaluator testing rows against all dimensions, cheapest and
+     * most selective first, see {@link FilterEvaluator}
+     */
+    public FilterEvaluator compile() {
+        return new FilterEvaluator((map == null) ? new HashMap<String, Predicate>() : map);
+    }
+    
+    /**
+     * Applies all dimensions column-at-a-time to a block of rows, see
+     * {@link BatchPredicate}. A filter without dimensions selects all rows.
+     * 
+     * @param columns a long[], int[] or double[] column per dimension
+     * @param offset index of the first row in the columns
+     * @param length number of rows
+     * @param selection bitmap of at least {@link Bitmaps#words(int)} words,
+     * overwritten with the rows matching all dimensions
+     * @throws IllegalArgumentException if a column is missing or has an
+     * unsupported type, or a predicate does not support batch evaluation
+     */
+    public void select(Map<String, ?> columns, int offset, int length, long[] selection) {
+        boolean and = false;
+        for (String dimension : getDimensions()) {
+            Predicate predicate = map.get(dimension);
+            if (!(predicate instanceof BatchPredicate)) {
+                throw new IllegalArgumentException("no batch evaluation for dimension " + dimension);
+            }
+            BatchPredicate batch = (BatchPredicate) predicate;
+            Object column = columns.get(dimension);
+            if (column instanceof long[]) {
+                batch.selectLong((long[]) column, offset, length, selection, and);
+            } else if (column instanceof int[]) {
+                batch.selectInt((int[]) column, offset, length, selection, and);
+            } else if (column instanceof double[]) {
+                batch.selectDouble((double[]) column, offset, length, selection, and);
+            } else {
+                throw new IllegalArgumentException("no long[], int[] or double[] column for dimension " + dimension);
+            }
+            and = true;
+        }
+        if (!and) {
+            Bitmaps.fill(selection, length);
+        }
+    }
+    
 }
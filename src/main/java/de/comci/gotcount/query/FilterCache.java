@@ -0,0 +1,266 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of parsed {@link Filter}s and {@link Bucket}s by query string.
+ *
+ * Entries are evicted least recently used first once the maximum size is
+ * exceeded, and after they have been in the cache longer than the configured
+ * time to live. Filters and buckets are immutable, so a cached instance can be
+ * handed out to any number of threads. With a {@link PredicatePool} the
+ * predicates of all cached entries are interned, so equal predicates of
+ * different queries share one instance.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class FilterCache {
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final ParserEngine engine;
+    private final PredicatePool pool;
+
+    private final Lru<Filter> filters;
+    private final Lru<Bucket> buckets;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Cache without time based eviction using the default engine
+     *
+     * @param maximumSize maximum number of filters and of buckets
+     */
+    public FilterCache(int maximumSize) {
+        this(maximumSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cache using the default engine
+     *
+     * @param maximumSize maximum number of filters and of buckets
+     * @param timeToLive time after insertion an entry is evicted, 0 to keep
+     * entries until they are evicted by size
+     * @param unit unit of timeToLive
+     */
+    public FilterCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        this(maximumSize, timeToLive, unit, ParserEngine.PARBOILED);
+    }
+
+    /**
+     * @param maximumSize maximum number of filters and of buckets
+     * @param timeToLive time after insertion an entry is evicted, 0 to keep
+     * entries until they are evicted by size
+     * @param unit unit of timeToLive
+     * @param engine the engine used to parse on a cache miss
+     */
+    public FilterCache(int maximumSize, long timeToLive, TimeUnit unit, ParserEngine engine) {
+        this(maximumSize, timeToLive, unit, engine, null);
+    }
+
+    /**
+     * @param maximumSize maximum number of filters and of buckets
+     * @param timeToLive time after insertion an entry is evicted, 0 to keep
+     * entries until they are evicted by size
+     * @param unit unit of timeToLive
+     * @param engine the engine used to parse on a cache miss
+     * @param pool the pool parsed predicates are interned in, null to not
+     * intern them
+     */
+    public FilterCache(int maximumSize, long timeToLive, TimeUnit unit, ParserEngine engine, PredicatePool pool) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("timeToLive must not be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.engine = engine;
+        this.pool = pool;
+        this.filters = new Lru<>();
+        this.buckets = new Lru<>();
+    }
+
+    /**
+     * @param input a query string
+     * @return the cached filter for the input, parsed on a miss
+     */
+    public Filter getFilter(String input) {
+        Filter filter = lookup(filters, input);
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) {
+            sink.cacheLookup(MetricsSink.QUERY, filter != null);
+        }
+        if (filter == null) {
+            filter = new Filter(input, engine);
+            filter = store(filters, input, (pool == null) ? filter : pool.intern(filter));
+        }
+        return filter;
+    }
+
+    /**
+     * @param input a bucket definition
+     * @return the cached bucket for the input, parsed on a miss
+     */
+    public Bucket getBucket(String input) {
+        Bucket bucket = lookup(buckets, input);
+        MetricsSink sink = Metrics.sink;
+        if (sink != null) {
+            sink.cacheLookup(MetricsSink.FILTER, bucket != null);
+        }
+        if (bucket == null) {
+            bucket = new Bucket(input, engine);
+            bucket = store(buckets, input, (pool == null) ? bucket : pool.intern(bucket));
+        }
+        return bucket;
+    }
+
+    private synchronized <V> V lookup(Lru<V> cache, String input) {
+        Entry<V> entry = cache.get(input);
+        if (entry != null && isExpired(entry, now())) {
+            cache.remove(input);
+            cache.inserted.remove(input);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a value parsed outside the lock. If another thread stored the
+     * same input in the meantime its value is kept.
+     */
+    private synchronized <V> V store(Lru<V> cache, String input, V value) {
+        long now = now();
+        Entry<V> existing = cache.get(input);
+        if (existing != null && !isExpired(existing, now)) {
+            return existing.value;
+        }
+        Entry<V> entry = new Entry<>(input, value, now);
+        cache.put(input, entry);
+        if (timeToLiveNanos > 0) {
+            // re-insert so a replaced entry moves to the end
+            cache.inserted.remove(input);
+            cache.inserted.put(input, entry);
+            expire(cache, now);
+        }
+        return value;
+    }
+
+    /**
+     * Removes expired entries in insertion order, stopping at the first one
+     * which has not expired yet
+     */
+    private <V> void expire(Lru<V> cache, long now) {
+        for (Iterator<Entry<V>> it = cache.inserted.values().iterator(); it.hasNext();) {
+            Entry<V> eldest = it.next();
+            if (!isExpired(eldest, now)) {
+                return;
+            }
+            it.remove();
+            cache.remove(eldest.key);
+            evictions++;
+        }
+    }
+
+    private boolean isExpired(Entry<?> entry, long now) {
+        return timeToLiveNanos > 0 && now - entry.created >= timeToLiveNanos;
+    }
+
+    /**
+     * @return the current time in nanoseconds, overridable for tests
+     */
+    long now() {
+        return System.nanoTime();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return number of cached filters and buckets
+     */
+    public synchronized int size() {
+        return filters.size() + buckets.size();
+    }
+
+    /**
+     * Removes all entries, the counters are kept
+     */
+    public synchronized void clear() {
+        filters.clear();
+        buckets.clear();
+    }
+
+    private static final class Entry<V> {
+
+        private final String key;
+        private final V value;
+        private final long created;
+
+        Entry(String key, V value, long created) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+
+    }
+
+    /**
+     * Access ordered map removing its eldest entry when exceeding the maximum
+     * size, with its entries in insertion order for time based eviction
+     */
+    private final class Lru<V> extends LinkedHashMap<String, Entry<V>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Map<String, Entry<V>> inserted = new LinkedHashMap<>();
+
+        Lru() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            inserted.clear();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            if (size() > maximumSize) {
+                inserted.remove(eldest.getKey());
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
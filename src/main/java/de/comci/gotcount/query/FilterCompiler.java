@@ -0,0 +1,369 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Compiles filters into generated classes, for long-lived filters evaluated on
+ * many rows.
+ *
+ * The generated {@link RowFilter} tests all dimensions in one straight-line
+ * method, cheapest first (see {@link FilterEvaluator#cost}). Equality checks,
+ * integral and date ranges and lists of up to {@link #MAX_INLINED_LIST}
+ * integral or string members are inlined as constants, together with their
+ * negation. A value of another type than the inlined constants, and any other
+ * predicate, is tested by calling the parsed predicate, so results and
+ * exceptions equal those of {@link Filter#compile()}. If a class cannot be
+ * generated the filter falls back to {@link Filter#compile()}.
+ *
+ * Compiled filters are cached by query string, least recently used first out.
+ * Every generated class has its own class loader, so it is unloaded once it
+ * is evicted and no longer used.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class FilterCompiler {
+
+    /**
+     * Members up to which a list is inlined as a chain of comparisons
+     */
+    static final int MAX_INLINED_LIST = 8;
+
+    private static final String ROW_FILTER = "de/comci/gotcount/query/RowFilter";
+    private static final String ROW = "de/comci/gotcount/query/Row";
+    private static final String PREDICATE = "de/comci/gotcount/query/Predicate";
+    private static final String PREDICATES = "[L" + PREDICATE + ";";
+    private static final String PACKAGE = "de/comci/gotcount/query/generated/";
+
+    private static final AtomicInteger CLASSES = new AtomicInteger();
+
+    private final int maximumSize;
+    private final ParserEngine engine;
+    private final Map<String, RowFilter> filters;
+
+    /**
+     * Compiler using the default engine
+     *
+     * @param maximumSize maximum number of cached filters
+     */
+    public FilterCompiler(int maximumSize) {
+        this(maximumSize, ParserEngine.PARBOILED);
+    }
+
+    /**
+     * @param maximumSize maximum number of cached filters
+     * @param engine the engine used to parse queries
+     */
+    public FilterCompiler(int maximumSize, ParserEngine engine) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.engine = engine;
+        this.filters = new LinkedHashMap<String, RowFilter>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RowFilter> eldest) {
+                return size() > FilterCompiler.this.maximumSize;
+            }
+
+        };
+    }
+
+    /**
+     * @param query a query string
+     * @return the cached compiled filter for the query, compiled on a miss
+     */
+    public RowFilter compile(String query) {
+        synchronized (this) {
+            RowFilter filter = filters.get(query);
+            if (filter != null) {
+                return filter;
+            }
+        }
+        // generated outside the lock, the first one stored wins
+        RowFilter filter = compile(new Filter(query, engine));
+        synchronized (this) {
+            RowFilter existing = filters.get(query);
+            if (existing != null) {
+                return existing;
+            }
+            filters.put(query, filter);
+            return filter;
+        }
+    }
+
+    /**
+     * @return number of cached filters
+     */
+    public synchronized int size() {
+        return filters.size();
+    }
+
+    public synchronized void clear() {
+        filters.clear();
+    }
+
+    /**
+     * @param filter
+     * @return the generated filter, or the evaluator of the filter if
+     * generation fails
+     */
+    RowFilter compile(Filter filter) {
+        List<String> dimensions = new ArrayList<>(filter.getDimensions());
+        final Map<String, Double> costs = new LinkedHashMap<>();
+        for (String dimension : dimensions) {
+            costs.put(dimension, FilterEvaluator.cost(filter.getPredicate(dimension)));
+        }
+        Collections.sort(dimensions, new Comparator<String>() {
+
+            @Override
+            public int compare(String a, String b) {
+                int c = Double.compare(costs.get(a), costs.get(b));
+                return (c != 0) ? c : a.compareTo(b);
+            }
+
+        });
+        Predicate[] predicates = new Predicate[dimensions.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = filter.getPredicate(dimensions.get(i));
+        }
+        String name = PACKAGE + "CompiledFilter" + CLASSES.incrementAndGet();
+        try {
+            Class<?> c = define(name.replace('/', '.'), generate(name, dimensions, predicates));
+            return (RowFilter) c.getConstructor(Predicate[].class).newInstance((Object) predicates);
+        } catch (RuntimeException | LinkageError | ReflectiveOperationException ex) {
+            return filter.compile();
+        }
+    }
+
+    /**
+     * Defines a generated class in a new class loader, overridable for tests
+     */
+    Class<?> define(String name, byte[] code) {
+        return new Loader(FilterCompiler.class.getClassLoader()).define(name, code);
+    }
+
+    private static byte[] generate(String name, List<String> dimensions, Predicate[] predicates) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // locals only hold Objects, no need to load classes
+                return "java/lang/Object";
+            }
+
+        };
+        cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null,
+                "java/lang/Object", new String[]{ROW_FILTER});
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "p", PREDICATES, null, null).visitEnd();
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + PREDICATES + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, name, "p", PREDICATES);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        // locals: 0 this, 1 row, 2 value, 3-4 long value
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "test", "(L" + ROW + ";)Z", null, null);
+        mv.visitCode();
+        Label fail = new Label();
+        for (int i = 0; i < predicates.length; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitLdcInsn(dimensions.get(i));
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, ROW, "get", "(Ljava/lang/String;)Ljava/lang/Object;", true);
+            mv.visitVarInsn(Opcodes.ASTORE, 2);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitJumpInsn(Opcodes.IFNULL, fail);
+            Label next = new Label();
+            check(mv, name, i, predicates[i], next, fail);
+            mv.visitLabel(next);
+        }
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(fail);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Emits the test of the value in local 2, jumping to next if it passes
+     * and to fail otherwise
+     */
+    private static void check(MethodVisitor mv, String name, int index, Predicate predicate, Label next, Label fail) {
+        if (predicate instanceof QueryParser.NumberCheck) {
+            QueryParser.NumberCheck check = (QueryParser.NumberCheck) predicate;
+            Label match = (check.isNot) ? fail : next;
+            Label miss = (check.isNot) ? next : fail;
+            // like the interpreted check, a value of another type fails the cast
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitTypeInsn(Opcodes.CHECKCAST, "java/lang/Number");
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/Number", "doubleValue", "()D", false);
+            mv.visitLdcInsn(check.v.doubleValue());
+            mv.visitInsn(Opcodes.DCMPL);
+            mv.visitJumpInsn(Opcodes.IFEQ, match);
+            mv.visitJumpInsn(Opcodes.GOTO, miss);
+            return;
+        }
+        Label slow = new Label();
+        if (predicate instanceof QueryParser.DateCheck) {
+            QueryParser.DateCheck check = (QueryParser.DateCheck) predicate;
+            loadLong(mv, "java/util/Date", slow);
+            equalsAny(mv, Collections.<Object>singletonList(check.v.getTime()), (check.isNot) ? fail : next, (check.isNot) ? next : fail);
+        } else if (predicate instanceof QueryParser.RangeCheck && inlinedRange((QueryParser.RangeCheck) predicate) != null) {
+            QueryParser.RangeCheck check = (QueryParser.RangeCheck) predicate;
+            loadLong(mv, inlinedRange(check), slow);
+            mv.visitVarInsn(Opcodes.LLOAD, 3);
+            mv.visitLdcInsn(check.lowest());
+            mv.visitInsn(Opcodes.LCMP);
+            mv.visitJumpInsn(Opcodes.IFLT, fail);
+            mv.visitVarInsn(Opcodes.LLOAD, 3);
+            mv.visitLdcInsn(check.highest());
+            mv.visitInsn(Opcodes.LCMP);
+            mv.visitJumpInsn(Opcodes.IFGT, fail);
+            mv.visitJumpInsn(Opcodes.GOTO, next);
+        } else if (predicate instanceof QueryParser.ListCheck && inlinedMembers((QueryParser.ListCheck) predicate) != null) {
+            QueryParser.ListCheck check = (QueryParser.ListCheck) predicate;
+            List<Object> members = inlinedMembers(check);
+            Label match = (check.isNot) ? fail : next;
+            Label miss = (check.isNot) ? next : fail;
+            if (members.get(0) instanceof Long) {
+                loadLong(mv, "java/lang/Long", slow);
+                equalsAny(mv, members, match, miss);
+            } else {
+                stringEqualsAny(mv, members, slow, match, miss);
+            }
+        } else if (predicate.getClass() == QueryParser.DefaultCheck.class && ((QueryParser.DefaultCheck) predicate).v instanceof String) {
+            QueryParser.DefaultCheck check = (QueryParser.DefaultCheck) predicate;
+            stringEqualsAny(mv, Collections.singletonList(check.v), slow, (check.isNot) ? fail : next, (check.isNot) ? next : fail);
+        } else {
+            mv.visitJumpInsn(Opcodes.GOTO, slow);
+        }
+        // any other value or predicate: call the parsed predicate
+        mv.visitLabel(slow);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, name, "p", PREDICATES);
+        mv.visitLdcInsn(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, PREDICATE, "test", "(Ljava/lang/Object;)Z", true);
+        mv.visitJumpInsn(Opcodes.IFEQ, fail);
+        mv.visitJumpInsn(Opcodes.GOTO, next);
+    }
+
+    /**
+     * @return the internal name of the bounds' class if the range is inlined
+     */
+    private static String inlinedRange(QueryParser.RangeCheck check) {
+        Class<?> from = check.getFrom().getClass();
+        if (from != check.getTo().getClass()) {
+            return null;
+        }
+        if (from == Long.class) {
+            return "java/lang/Long";
+        }
+        return (from == Date.class) ? "java/util/Date" : null;
+    }
+
+    /**
+     * @return the members of a small list that are all integral, as Longs, or
+     * all strings, null if the list is not inlined
+     */
+    private static List<Object> inlinedMembers(QueryParser.ListCheck check) {
+        List<?> list = (List<?>) check.v;
+        if (list.isEmpty() || list.size() > MAX_INLINED_LIST) {
+            return null;
+        }
+        List<Object> members = new ArrayList<>();
+        boolean strings = list.get(0) instanceof String;
+        for (Object o : list) {
+            Object member = (strings) ? o : QueryParser.ListCheck.normalize(o);
+            if ((strings) ? !(member instanceof String) : !(member instanceof Long)) {
+                return null;
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    /**
+     * Stores the value as long in locals 3-4 if it is of the given class,
+     * jumps to slow otherwise
+     */
+    private static void loadLong(MethodVisitor mv, String type, Label slow) {
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitTypeInsn(Opcodes.INSTANCEOF, type);
+        mv.visitJumpInsn(Opcodes.IFEQ, slow);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, type);
+        if (type.equals("java/util/Date")) {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, type, "getTime", "()J", false);
+        } else {
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, type, "longValue", "()J", false);
+        }
+        mv.visitVarInsn(Opcodes.LSTORE, 3);
+    }
+
+    private static void equalsAny(MethodVisitor mv, List<Object> constants, Label match, Label miss) {
+        for (Object constant : constants) {
+            mv.visitVarInsn(Opcodes.LLOAD, 3);
+            mv.visitLdcInsn(constant);
+            mv.visitInsn(Opcodes.LCMP);
+            mv.visitJumpInsn(Opcodes.IFEQ, match);
+        }
+        mv.visitJumpInsn(Opcodes.GOTO, miss);
+    }
+
+    private static void stringEqualsAny(MethodVisitor mv, List<Object> constants, Label slow, Label match, Label miss) {
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitTypeInsn(Opcodes.INSTANCEOF, "java/lang/String");
+        mv.visitJumpInsn(Opcodes.IFEQ, slow);
+        for (Object constant : constants) {
+            mv.visitLdcInsn(constant);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
+            mv.visitJumpInsn(Opcodes.IFNE, match);
+        }
+        mv.visitJumpInsn(Opcodes.GOTO, miss);
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] code) {
+            return defineClass(name, code, 0, code.length);
+        }
+
+    }
+
+}
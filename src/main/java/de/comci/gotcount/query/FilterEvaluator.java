@@ -0,0 +1,195 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Row-at-a-time evaluation of a {@link Filter}, created by
+ * {@link Filter#compile()}.
+ *
+ * The dimensions are checked one after the other and the first failing check
+ * rejects the row, so the order decides how many checks a rejected row pays
+ * for. Checks are first ordered by their estimated cost (single value, range,
+ * list by size). While rows are evaluated each check counts how often it
+ * rejects, and every {@link #REPLAN_INTERVAL} rows the checks are reordered
+ * by cost per rejection, so cheap checks rejecting many rows run first.
+ *
+ * The counts since the last report are reported to the {@link MetricsSink}
+ * if one is installed, see {@link Metrics}, on every reordering and by
+ * {@link #flushMetrics()}, which callers evaluating a batch of rows call
+ * after its last row.
+ *
+ * A row without a value for a dimension is rejected. Instances may be shared
+ * between threads: the counters are statistics and may lose updates, the
+ * order is replaced as a whole.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class FilterEvaluator implements RowFilter {
+
+    /**
+     * Rows between two reorderings
+     */
+    static final int REPLAN_INTERVAL = 4096;
+
+    private volatile Check[] checks;
+    private int rows;
+
+    FilterEvaluator(Map<String, Predicate> predicates) {
+        Check[] initial = new Check[predicates.size()];
+        int i = 0;
+        for (Map.Entry<String, Predicate> e : predicates.entrySet()) {
+            initial[i++] = new Check(e.getKey(), e.getValue());
+        }
+        Arrays.sort(initial, BY_RANK);
+        checks = initial;
+    }
+
+    /**
+     * @param row
+     * @return true if the row matches all dimensions
+     */
+    @Override
+    public boolean test(Row row) {
+        Check[] current = checks;
+        if (++rows >= REPLAN_INTERVAL) {
+            rows = 0;
+            current = replan(current);
+        }
+        for (Check check : current) {
+            check.evaluated++;
+            Object value = row.get(check.dimension);
+            if (value == null || !check.predicate.test(value)) {
+                check.rejected++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports the counts since the last report to the installed
+     * {@link MetricsSink}, if any
+     */
+    public void flushMetrics() {
+        MetricsSink sink = Metrics.sink;
+        if (sink == null) {
+            return;
+        }
+        for (Check check : checks) {
+            check.report(sink);
+        }
+    }
+
+    /**
+     * @return the dimensions in the order they are currently checked
+     */
+    public List<String> getOrder() {
+        List<String> order = new ArrayList<>();
+        for (Check check : checks) {
+            order.add(check.dimension);
+        }
+        return order;
+    }
+
+    private Check[] replan(Check[] current) {
+        MetricsSink sink = Metrics.sink;
+        for (Check check : current) {
+            if (sink != null) {
+                check.report(sink);
+            }
+            check.rank = check.cost / check.rejectRate();
+            // halve the counts so the order follows changes in the data
+            check.evaluated >>= 1;
+            check.rejected >>= 1;
+            check.reportedEvaluated = check.evaluated;
+            check.reportedRejected = check.rejected;
+        }
+        Check[] next = current.clone();
+        Arrays.sort(next, BY_RANK);
+        checks = next;
+        return next;
+    }
+
+    /**
+     * Estimated relative cost of a test: constants are free, single values
+     * are cheapest, then ranges, then lists growing with their size
+     */
+    static double cost(Predicate predicate) {
+        if (predicate instanceof ConstantCheck) {
+            return 0;
+        }
+        if (predicate instanceof QueryParser.ListCheck) {
+            int size = ((List<?>) ((QueryParser.ListCheck) predicate).v).size();
+            return 3 + Math.log(size + 1) / Math.log(2);
+        }
+        if (predicate instanceof QueryParser.RangeCheck) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static final class Check {
+
+        /**
+         * Assumed share of rejected rows before anything was counted
+         */
+        private static final double PRIOR_REJECT_RATE = 0.5;
+
+        final String dimension;
+        final Predicate predicate;
+        final double cost;
+        double rank;
+        long evaluated;
+        long rejected;
+        // counts after the last replan, the rest is not reported yet
+        long reportedEvaluated;
+        long reportedRejected;
+
+        Check(String dimension, Predicate predicate) {
+            this.dimension = dimension;
+            this.predicate = predicate;
+            this.cost = cost(predicate);
+            this.rank = cost / PRIOR_REJECT_RATE;
+        }
+
+        void report(MetricsSink sink) {
+            long tests = Math.max(0, evaluated - reportedEvaluated);
+            long rejects = Math.max(0, rejected - reportedRejected);
+            if (tests > 0) {
+                sink.evaluated(predicate.getClass(), tests, Math.max(0, tests - rejects));
+            }
+            reportedEvaluated = evaluated;
+            reportedRejected = rejected;
+        }
+
+        double rejectRate() {
+            // one assumed evaluation at the prior keeps checks that never
+            // reject ranked by cost instead of infinite
+            return (rejected + PRIOR_REJECT_RATE) / (evaluated + 1);
+        }
+
+    }
+
+    /**
+     * Ascending cost per rejected row, ties by dimension for a stable order
+     */
+    private static final Comparator<Check> BY_RANK = new Comparator<Check>() {
+
+        @Override
+        public int compare(Check a, Check b) {
+            int c = Double.compare(a.rank, b.rank);
+            return (c != 0) ? c : a.dimension.compareTo(b.dimension);
+        }
+
+    };
+
+}
@@ -0,0 +1,152 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses successive versions of a query, e.g. while it is edited, reparsing
+ * only the {@code ;} separated filters that changed since the previous call.
+ *
+ * The query is split at every {@code ;} that is not escaped as {@code \;},
+ * the same boundaries the Query rule finds between its filters. A filter
+ * whose text was seen in the previous call is not parsed again, its
+ * {@link Predicate} instance is reused. Parsing stops at the first filter
+ * that does not match completely, keeping the matched part, so the result
+ * equals {@link Filter#fromString(String, ParserEngine)} for any query within
+ * the {@link ParseLimits}. Unlike {@link Filter#fromString}, which has no
+ * limits, a query exceeding them is rejected like by {@link Filter#parse},
+ * {@link ParseLimits#DEFAULT} unless given otherwise. Each new filter is
+ * parsed in a single pass through {@link ParserEngine}, so it is timed by an
+ * installed {@link MetricsSink}.
+ *
+ * An instance keeps the filters of the last query only and must not be
+ * shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class IncrementalParser {
+
+    private final ParserEngine engine;
+    private final ParseLimits limits;
+    private final DateDecoder decoder;
+    private Map<String, Segment> previous = new HashMap<>();
+    private int reparsed;
+
+    public IncrementalParser() {
+        this(ParserEngine.PARBOILED);
+    }
+
+    public IncrementalParser(ParserEngine engine) {
+        this(engine, ParseLimits.DEFAULT, DateDecoder.getDefault());
+    }
+
+    /**
+     * @param engine
+     * @param limits the limits queries are held to
+     * @param decoder decodes the date and time literals
+     */
+    public IncrementalParser(ParserEngine engine, ParseLimits limits, DateDecoder decoder) {
+        this.engine = engine;
+        this.limits = limits;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @param query
+     * @return the filter, equal to {@link Filter#fromString} of the query
+     * @throws QueryParseException if the query exceeds the limits, which
+     * {@link Filter#fromString} does not check
+     */
+    public Filter parse(String query) {
+        limits.checkLength(MetricsSink.QUERY, query);
+        Map<String, Segment> current = new HashMap<>();
+        Map<String, Predicate> predicates = new HashMap<>();
+        boolean matched = false;
+        boolean stopped = false;
+        reparsed = 0;
+        for (String text : split(query)) {
+            Segment segment = (current.containsKey(text)) ? current.get(text) : previous.get(text);
+            if (stopped) {
+                // not part of the result, but kept for the next call
+                if (segment != null) {
+                    current.put(text, segment);
+                }
+                continue;
+            }
+            if (segment == null) {
+                segment = parseSegment(text);
+                reparsed++;
+            }
+            current.put(text, segment);
+            if (segment.filter == null) {
+                stopped = true;
+                continue;
+            }
+            predicates.put(segment.filter.getKey(), segment.filter.getValue());
+            matched = true;
+            stopped = !segment.complete;
+        }
+        previous = current;
+        limits.checkQuery(predicates);
+        return new Filter((matched) ? predicates : null);
+    }
+
+    /**
+     * @return the number of filters the last call to {@link #parse} parsed
+     */
+    public int getReparsedSegments() {
+        return reparsed;
+    }
+
+    private Segment parseSegment(String text) {
+        // a prefix may match, as it would in the Query rule
+        ParserEngine.Prefix prefix = engine.prefixFilter(text, limits, decoder);
+        return new Segment(prefix.filter, prefix.length == text.length());
+    }
+
+    /**
+     * @return the texts between unescaped {@code ;}
+     */
+    static List<String> split(String query) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\\' && i + 1 < query.length() && isControlChar(query.charAt(i + 1))) {
+                i++; // escaped, see EscapedControlChars
+            } else if (c == ';') {
+                segments.add(query.substring(start, i));
+                start = i + 1;
+            }
+        }
+        segments.add(query.substring(start));
+        return segments;
+    }
+
+    private static boolean isControlChar(char c) {
+        return ":()[];!".indexOf(c) >= 0;
+    }
+
+    /**
+     * A parsed filter and whether it matched its whole text
+     */
+    private static final class Segment {
+
+        final Map.Entry<String, Predicate> filter;
+        final boolean complete;
+
+        Segment(Map.Entry<String, Predicate> filter, boolean complete) {
+            this.filter = Simplifier.simplify(filter);
+            this.complete = complete;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Allocation free evaluation of a {@link Predicate} on a long value, dates are
+ * passed as epoch millis
+ * 
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface LongPredicate {
+    
+    boolean testLong(long test);
+    
+}
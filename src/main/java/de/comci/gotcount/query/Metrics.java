@@ -0,0 +1,43 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Holds the {@link MetricsSink} measurements are reported to. There is none
+ * by default, then nothing is measured: the hot paths only read one volatile
+ * field.
+ *
+ * Parsing is timed per entry rule by {@link ParserEngine}, lookups are
+ * counted by {@link FilterCache}. Evaluations are counted by
+ * {@link FilterEvaluator}, which counts per check anyway to order its checks
+ * and reports the counts when it reorders; predicates tested directly or
+ * through {@link Filter#select} are not counted.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class Metrics {
+
+    static volatile MetricsSink sink;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param sink receives all measurements from now on, null to stop
+     * measuring
+     */
+    public static void setSink(MetricsSink sink) {
+        Metrics.sink = sink;
+    }
+
+    /**
+     * @return the current sink, null if measuring is disabled
+     */
+    public static MetricsSink getSink() {
+        return sink;
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Receives measurements of parsing and evaluation once installed with
+ * {@link Metrics#setSink(MetricsSink)}, see {@link QueryMetrics} for a sink
+ * that can be exported through JMX.
+ *
+ * Methods are called from the parsing and evaluating threads and must be
+ * thread safe and fast.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface MetricsSink {
+
+    /**
+     * Entry rule parsing a query, e.g. {@code d0:a;d1:[1,5]}
+     */
+    String QUERY = "Query";
+
+    /**
+     * Entry rule parsing a single filter or bucket, e.g. {@code Adults:[20,99]}
+     */
+    String FILTER = "Filter";
+
+    /**
+     * @param rule {@link #QUERY} or {@link #FILTER}
+     * @param nanos time spent parsing
+     * @param matched false if the input did not match or parsing failed
+     */
+    void parsed(String rule, long nanos, boolean matched);
+
+    /**
+     * @param rule {@link #QUERY} for filters, {@link #FILTER} for buckets
+     * @param hit whether the parsed value was found in a {@link FilterCache}
+     */
+    void cacheLookup(String rule, boolean hit);
+
+    /**
+     * @param type class of the tested predicate
+     * @param evaluated number of tests
+     * @param passed number of tests returning true
+     */
+    void evaluated(Class<?> type, long evaluated, long passed);
+
+}
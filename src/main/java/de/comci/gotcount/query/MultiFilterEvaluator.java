@@ -0,0 +1,166 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests each row against many filters at once, e.g. saved alerting rules
+ * over one event stream.
+ *
+ * Equal (dimension, predicate) pairs of different filters, by the
+ * predicates' {@code equals}, are tested once per row, and a failing pair
+ * rejects all filters using it with one word-wise AND-NOT of its users'
+ * bitmap. Pairs whose filters are all rejected already are not tested at
+ * all. So the cost per row grows with the number of distinct pairs rather
+ * than with the number of filters. The result is a bitmap with bit i set if
+ * filter i matched, see {@link Bitmaps}.
+ *
+ * A row without a value for a dimension fails all pairs of the dimension, a
+ * filter without dimensions matches every row.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class MultiFilterEvaluator {
+
+    private final int filters;
+    private final String[] dimensions;
+    // pairs of dimension d are first[d] until first[d + 1]
+    private final int[] first;
+    private final Predicate[] predicates;
+    // the filters using each pair, as bitmap from word offsets[p] on
+    private final int[] offsets;
+    private final long[][] users;
+
+    /**
+     * @param filters the filters, in the order of the bits of the result
+     */
+    public MultiFilterEvaluator(List<Filter> filters) {
+        this.filters = filters.size();
+        Map<String, Map<Predicate, List<Integer>>> byDimension = new LinkedHashMap<>();
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            for (String dimension : filter.getDimensions()) {
+                Map<Predicate, List<Integer>> pairs = byDimension.get(dimension);
+                if (pairs == null) {
+                    pairs = new LinkedHashMap<>();
+                    byDimension.put(dimension, pairs);
+                }
+                Predicate predicate = filter.getPredicate(dimension);
+                List<Integer> using = pairs.get(predicate);
+                if (using == null) {
+                    using = new ArrayList<>();
+                    pairs.put(predicate, using);
+                }
+                using.add(i);
+            }
+        }
+        dimensions = byDimension.keySet().toArray(new String[byDimension.size()]);
+        first = new int[dimensions.length + 1];
+        List<Map.Entry<Predicate, List<Integer>>> all = new ArrayList<>();
+        for (int d = 0; d < dimensions.length; d++) {
+            first[d] = all.size();
+            all.addAll(byDimension.get(dimensions[d]).entrySet());
+        }
+        first[dimensions.length] = all.size();
+        predicates = new Predicate[all.size()];
+        offsets = new int[all.size()];
+        users = new long[all.size()][];
+        for (int p = 0; p < predicates.length; p++) {
+            predicates[p] = all.get(p).getKey();
+            // filter indices were added in ascending order
+            List<Integer> using = all.get(p).getValue();
+            offsets[p] = using.get(0) >>> 6;
+            users[p] = new long[(using.get(using.size() - 1) >>> 6) - offsets[p] + 1];
+            for (int filter : using) {
+                users[p][(filter >>> 6) - offsets[p]] |= 1L << filter;
+            }
+        }
+    }
+
+    /**
+     * @return number of filters
+     */
+    public int size() {
+        return filters;
+    }
+
+    /**
+     * @return number of distinct (dimension, predicate) pairs tested per row
+     */
+    public int getDistinctPredicates() {
+        return predicates.length;
+    }
+
+    /**
+     * @return the distinct (dimension, predicate) pairs in the order they are
+     * tested
+     */
+    public List<Map.Entry<String, Predicate>> getDistinctPairs() {
+        List<Map.Entry<String, Predicate>> pairs = new ArrayList<>();
+        for (int d = 0; d < dimensions.length; d++) {
+            for (int p = first[d]; p < first[d + 1]; p++) {
+                pairs.add(new AbstractMap.SimpleImmutableEntry<>(dimensions[d], predicates[p]));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @param row
+     * @return bitmap of {@link #size()} bits, bit i set if filter i matched
+     */
+    public long[] test(Row row) {
+        long[] matches = Bitmaps.allocate(filters);
+        test(row, matches);
+        return matches;
+    }
+
+    /**
+     * Tests a row without allocating
+     *
+     * @param row
+     * @param matches bitmap of at least {@link Bitmaps#words(int)} words for
+     * {@link #size()} filters, overwritten with bit i set if filter i matched
+     */
+    public void test(Row row, long[] matches) {
+        Bitmaps.fill(matches, filters);
+        for (int d = 0; d < dimensions.length; d++) {
+            Object value = row.get(dimensions[d]);
+            for (int p = first[d]; p < first[d + 1]; p++) {
+                if (!rejected(matches, p) && (value == null || !predicates[p].test(value))) {
+                    reject(matches, p);
+                }
+            }
+        }
+    }
+
+    private boolean rejected(long[] matches, int p) {
+        long[] using = users[p];
+        int offset = offsets[p];
+        for (int w = 0; w < using.length; w++) {
+            if ((matches[offset + w] & using[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reject(long[] matches, int p) {
+        long[] using = users[p];
+        int offset = offsets[p];
+        for (int w = 0; w < using.length; w++) {
+            matches[offset + w] &= ~using[w];
+        }
+    }
+
+}
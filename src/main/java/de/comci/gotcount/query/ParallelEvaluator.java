@@ -0,0 +1,254 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Counts or selects the rows matching a {@link Filter} in parallel on a
+ * {@link ForkJoinPool}, either over column arrays, see
+ * {@link Filter#select}, or over a {@link Spliterator} of {@link Row}s.
+ *
+ * The rows are split into blocks of about {@link #getBlockSize()} rows. Each
+ * block is evaluated by one task with its own selection bitmap or
+ * {@link FilterEvaluator}, and the counts and row ids of the blocks are only
+ * combined when their tasks are joined, so threads share no counters.
+ *
+ * Instances may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class ParallelEvaluator {
+
+    /**
+     * Rows per task unless given otherwise
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 14;
+
+    private final Filter filter;
+    private final ForkJoinPool pool;
+    private final int blockSize;
+
+    /**
+     * Evaluator on the common pool
+     *
+     * @param filter
+     */
+    public ParallelEvaluator(Filter filter) {
+        this(filter, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+    }
+
+    public ParallelEvaluator(Filter filter, ForkJoinPool pool) {
+        this(filter, pool, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param filter
+     * @param pool the pool running the tasks
+     * @param blockSize rows evaluated by one task
+     */
+    public ParallelEvaluator(Filter filter, ForkJoinPool pool, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.filter = filter;
+        this.pool = pool;
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param columns a long[], int[] or double[] column per dimension
+     * @param rows number of rows, starting at index 0 of the columns
+     * @return number of rows matching all dimensions
+     * @throws IllegalArgumentException as {@link Filter#select}
+     */
+    public long count(Map<String, ?> columns, int rows) {
+        return evaluate(columns, rows, false).count;
+    }
+
+    /**
+     * @param columns a long[], int[] or double[] column per dimension
+     * @param rows number of rows, starting at index 0 of the columns
+     * @return the ascending indices of the rows matching all dimensions
+     * @throws IllegalArgumentException as {@link Filter#select}
+     */
+    public int[] select(Map<String, ?> columns, int rows) {
+        Partial<int[]> result = evaluate(columns, rows, true);
+        int[] ids = new int[(int) result.count];
+        int n = 0;
+        for (int[] block : result.ids) {
+            System.arraycopy(block, 0, ids, n, block.length);
+            n += block.length;
+        }
+        return ids;
+    }
+
+    private Partial<int[]> evaluate(final Map<String, ?> columns, int rows, final boolean collect) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("rows must not be negative");
+        }
+        // fails on the calling thread for missing columns or predicates
+        // without batch evaluation
+        filter.select(columns, 0, 0, new long[0]);
+        if (filter.isUnsatisfiable() || rows == 0) {
+            return new Partial<>(0, new ArrayList<int[]>());
+        }
+        return pool.invoke(BlockTasks.columns(new BlockTasks.ColumnBlock<Partial<int[]>>() {
+
+            @Override
+            public Partial<int[]> evaluate(int from, int to) {
+                return columnBlock(columns, from, to, collect);
+            }
+
+        }, ParallelEvaluator.<int[]>append(), rows, blockSize));
+    }
+
+    /**
+     * @param rows
+     * @return number of rows matching all dimensions
+     */
+    public long count(Spliterator<? extends Row> rows) {
+        if (filter.isUnsatisfiable()) {
+            return 0;
+        }
+        return evaluate(rows, false).count;
+    }
+
+    /**
+     * @param rows a {@link Spliterator#SUBSIZED} spliterator, e.g. of a list
+     * @return the ascending encounter indices of the rows matching all
+     * dimensions
+     * @throws IllegalArgumentException if the spliterator is not subsized,
+     * so indices are unknown after splitting
+     */
+    public long[] select(Spliterator<? extends Row> rows) {
+        if (!rows.hasCharacteristics(Spliterator.SUBSIZED)) {
+            throw new IllegalArgumentException("row ids need a SUBSIZED spliterator");
+        }
+        if (filter.isUnsatisfiable()) {
+            return new long[0];
+        }
+        Partial<long[]> result = evaluate(rows, true);
+        long[] ids = new long[(int) result.count];
+        int n = 0;
+        for (long[] block : result.ids) {
+            System.arraycopy(block, 0, ids, n, block.length);
+            n += block.length;
+        }
+        return ids;
+    }
+
+    private Partial<long[]> evaluate(Spliterator<? extends Row> rows, final boolean collect) {
+        return pool.invoke(BlockTasks.rows(new BlockTasks.RowBlock<Partial<long[]>>() {
+
+            @Override
+            public Partial<long[]> evaluate(Spliterator<? extends Row> rows, long origin) {
+                return rowBlock(rows, origin, collect);
+            }
+
+        }, ParallelEvaluator.<long[]>append(), rows, blockSize));
+    }
+
+    /**
+     * Count and, if collected, row ids of consecutive blocks in order
+     */
+    private static final class Partial<A> {
+
+        long count;
+        final List<A> ids;
+
+        Partial(long count, List<A> ids) {
+            this.count = count;
+            this.ids = ids;
+        }
+
+        Partial<A> append(Partial<A> next) {
+            count += next.count;
+            if (ids != null) {
+                ids.addAll(next.ids);
+            }
+            return this;
+        }
+
+    }
+
+    /**
+     * Merges the partial result of the following rows into that of the rows
+     * before
+     */
+    private static <A> BinaryOperator<Partial<A>> append() {
+        return new BinaryOperator<Partial<A>>() {
+
+            @Override
+            public Partial<A> apply(Partial<A> before, Partial<A> next) {
+                return before.append(next);
+            }
+
+        };
+    }
+
+    private Partial<int[]> columnBlock(Map<String, ?> columns, int from, int to, boolean collect) {
+        int length = to - from;
+        long[] selection = Bitmaps.allocate(length);
+        filter.select(columns, from, length, selection);
+        int count = Bitmaps.cardinality(selection);
+        if (!collect) {
+            return new Partial<>(count, null);
+        }
+        int[] ids = new int[count];
+        int n = 0;
+        for (int w = 0; w < selection.length; w++) {
+            for (long word = selection[w]; word != 0; word &= word - 1) {
+                ids[n++] = from + (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        List<int[]> blocks = new ArrayList<>();
+        blocks.add(ids);
+        return new Partial<>(count, blocks);
+    }
+
+    private Partial<long[]> rowBlock(Spliterator<? extends Row> rows, final long start, boolean collect) {
+        final FilterEvaluator evaluator = filter.compile();
+        final long[][] ids = {(collect) ? new long[16] : null};
+        final long[] counts = {0, 0}; // matches, rows
+        rows.forEachRemaining(new Consumer<Row>() {
+
+            @Override
+            public void accept(Row row) {
+                if (evaluator.test(row)) {
+                    if (ids[0] != null) {
+                        if (counts[0] == ids[0].length) {
+                            ids[0] = Arrays.copyOf(ids[0], ids[0].length << 1);
+                        }
+                        ids[0][(int) counts[0]] = start + counts[1];
+                    }
+                    counts[0]++;
+                }
+                counts[1]++;
+            }
+
+        });
+        evaluator.flushMetrics();
+        if (!collect) {
+            return new Partial<>(counts[0], null);
+        }
+        List<long[]> blocks = new ArrayList<>();
+        blocks.add(Arrays.copyOf(ids[0], (int) counts[0]));
+        return new Partial<>(counts[0], blocks);
+    }
+
+}
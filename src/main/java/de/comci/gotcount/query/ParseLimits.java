@@ -0,0 +1,94 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds on the input accepted by {@link Filter#parse} and
+ * {@link Bucket#parse}, so a client cannot make the server parse or hold
+ * arbitrarily large filters. The length is checked before parsing, the
+ * number of dimensions and list members after.
+ *
+ * The grammar has no recursive rules, a list is the deepest nesting, so
+ * there is no depth to limit.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class ParseLimits {
+
+    /**
+     * 16384 characters, 256 dimensions and 4096 members per list
+     */
+    public static final ParseLimits DEFAULT = new ParseLimits(16384, 256, 4096);
+
+    private final int maxLength;
+    private final int maxDimensions;
+    private final int maxListSize;
+
+    /**
+     * @param maxLength maximum number of characters of the input
+     * @param maxDimensions maximum number of dimensions of a query
+     * @param maxListSize maximum number of members of a list
+     */
+    public ParseLimits(int maxLength, int maxDimensions, int maxListSize) {
+        if (maxLength < 1 || maxDimensions < 1 || maxListSize < 1) {
+            throw new IllegalArgumentException("limits must be positive");
+        }
+        this.maxLength = maxLength;
+        this.maxDimensions = maxDimensions;
+        this.maxListSize = maxListSize;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getMaxDimensions() {
+        return maxDimensions;
+    }
+
+    public int getMaxListSize() {
+        return maxListSize;
+    }
+
+    void checkLength(String rule, String input) {
+        if (input.length() > maxLength) {
+            throw new QueryParseException(rule, String.format("%d characters, at most %d allowed", input.length(), maxLength));
+        }
+    }
+
+    void checkQuery(Map<String, Predicate> parsed) {
+        if (parsed.size() > maxDimensions) {
+            throw new QueryParseException(MetricsSink.QUERY, String.format("%d dimensions, at most %d allowed", parsed.size(), maxDimensions));
+        }
+        for (Map.Entry<String, Predicate> e : parsed.entrySet()) {
+            checkPredicate(MetricsSink.QUERY, e.getKey(), e.getValue());
+        }
+    }
+
+    void checkFilter(Map.Entry<String, Predicate> parsed) {
+        checkPredicate(MetricsSink.FILTER, parsed.getKey(), parsed.getValue());
+    }
+
+    private void checkPredicate(String rule, String dimension, Predicate predicate) {
+        if (predicate instanceof QueryParser.ListCheck) {
+            int size = ((List<?>) ((QueryParser.ListCheck) predicate).v).size();
+            if (size > maxListSize) {
+                throw new QueryParseException(rule, String.format("%d members in the list of %s, at most %d allowed", size, dimension, maxListSize));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ParseLimits(%d,%d,%d)", maxLength, maxDimensions, maxListSize);
+    }
+
+}
@@ -7,26 +7,97 @@ package de.comci.gotcount.query;
 
 import java.util.Map;
 import org.parboiled.Parboiled;
+import org.parboiled.parserunners.BasicParseRunner;
 import org.parboiled.parserunners.ReportingParseRunner;
 
 /**
+ * Caches the parboiled parser and its runners per thread, so the rule graph is
+ * built once per thread instead of once per {@link Filter} or {@link Bucket}.
+ *
+ * Neither the parser (its Vars) nor the runners (their value stack) may be
+ * used by two threads at once, hence the thread local. The thread local
+ * lookup is the only shared access on a parse, so parsing scales with the
+ * number of threads. Only creating a thread's parser synchronizes, inside
+ * parboiled's class generation.
  *
  * @author Sebastian Maier (sebastian.maier@comci.de)
  */
 enum Parser {
-    
+
     INSTANCE;
-    
-    private final QueryParser parser;
-    private final ReportingParseRunner<Object> reportingParseRunner;
-    
-    Parser() {
-        parser = Parboiled.createParser(QueryParser.class);
-        reportingParseRunner = new ReportingParseRunner<>(parser.Query());
+
+    private final ThreadLocal<Runners> runners = new ThreadLocal<Runners>() {
+
+        @Override
+        protected Runners initialValue() {
+            return new Runners();
+        }
+
+    };
+
+    Map<String, Predicate> query(String input, DateDecoder decoder) {
+        return (Map) runners(decoder).query.run(input).resultValue;
     }
-    
-    Map<String, Predicate> parser(String input) {
-        return (Map) this.reportingParseRunner.run(input).resultValue;
+
+    Map.Entry<String, Predicate> filter(String input, DateDecoder decoder) {
+        return (Map.Entry) runners(decoder).filter.run(input).resultValue;
+    }
+
+    /**
+     * Single pass without error reporting, see {@link ParserEngine#strictQuery}
+     *
+     * @return the predicates by dimension, null unless the whole input
+     * matches
+     */
+    Map<String, Predicate> strictQuery(String input, DateDecoder decoder) {
+        return (Map) runners(decoder).strictQuery.run(input).resultValue;
+    }
+
+    Map.Entry<String, Predicate> strictFilter(String input, DateDecoder decoder) {
+        return (Map.Entry) runners(decoder).strictFilter.run(input).resultValue;
     }
-    
+
+    /**
+     * Single pass without error reporting, see
+     * {@link ParserEngine#prefixFilter}
+     *
+     * @return the filter matching a prefix of the input, null if none does
+     */
+    ParserEngine.Prefix prefixFilter(String input, DateDecoder decoder) {
+        return (ParserEngine.Prefix) runners(decoder).prefixFilter.run(input).resultValue;
+    }
+
+    /**
+     * @return the runners of the calling thread, their parser decoding dates
+     * with decoder until the next call
+     */
+    private Runners runners(DateDecoder decoder) {
+        Runners r = runners.get();
+        r.parser.decoder = decoder;
+        return r;
+    }
+
+    /**
+     * One parser instance and the runners for both entry rules
+     */
+    private static final class Runners {
+
+        private final QueryParser parser;
+        private final ReportingParseRunner<Object> query;
+        private final ReportingParseRunner<Object> filter;
+        private final BasicParseRunner<Object> strictQuery;
+        private final BasicParseRunner<Object> strictFilter;
+        private final BasicParseRunner<Object> prefixFilter;
+
+        Runners() {
+            parser = Parboiled.createParser(QueryParser.class);
+            query = new ReportingParseRunner<>(parser.Query());
+            filter = new ReportingParseRunner<>(parser.Filter());
+            strictQuery = new BasicParseRunner<>(parser.StrictQuery());
+            strictFilter = new BasicParseRunner<>(parser.StrictFilter());
+            prefixFilter = new BasicParseRunner<>(parser.PrefixFilter());
+        }
+
+    }
+
 }
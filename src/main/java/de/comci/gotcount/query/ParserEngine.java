@@ -0,0 +1,255 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Map;
+
+/**
+ * The parser implementations a {@link Filter} or {@link Bucket} can be built
+ * with. Both accept the same grammar and produce equal predicates.
+ *
+ * Both engines may be called from any number of threads at once: parboiled
+ * parsers are confined to their thread by {@link Parser}, the recursive
+ * descent parser is created per call. Parsing takes no locks once a thread
+ * has built its parboiled parser. The {@link DateDecoder} is passed with
+ * each call, so parses in different zones may run at once.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public enum ParserEngine {
+
+    /**
+     * The parboiled based {@link QueryParser}, cached per thread by
+     * {@link Parser}
+     */
+    PARBOILED {
+
+        @Override
+        Map<String, Predicate> parseQuery(String input, DateDecoder decoder) {
+            return Parser.INSTANCE.query(input, decoder);
+        }
+
+        @Override
+        Map.Entry<String, Predicate> parseFilter(String input, DateDecoder decoder) {
+            return Parser.INSTANCE.filter(input, decoder);
+        }
+
+        @Override
+        Map<String, Predicate> matchQuery(String input, DateDecoder decoder) {
+            Map<String, Predicate> parsed = Parser.INSTANCE.strictQuery(input, decoder);
+            // the basic runner does not tell where it failed, the recursive
+            // descent parser throws with the position
+            return (parsed != null) ? parsed : RECURSIVE_DESCENT.matchQuery(input, decoder);
+        }
+
+        @Override
+        Map.Entry<String, Predicate> matchFilter(String input, DateDecoder decoder) {
+            Map.Entry<String, Predicate> parsed = Parser.INSTANCE.strictFilter(input, decoder);
+            return (parsed != null) ? parsed : RECURSIVE_DESCENT.matchFilter(input, decoder);
+        }
+
+        @Override
+        Prefix matchPrefix(String input, DateDecoder decoder) {
+            Prefix parsed = Parser.INSTANCE.prefixFilter(input, decoder);
+            return (parsed != null) ? parsed : Prefix.NONE;
+        }
+
+    },
+    /**
+     * The hand-written {@link RecursiveDescentParser}, which scans the input
+     * directly without runtime class generation or a boxed value stack
+     */
+    RECURSIVE_DESCENT {
+
+        @Override
+        Map<String, Predicate> parseQuery(String input, DateDecoder decoder) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(input, decoder);
+            return parser.Query() ? (Map) parser.value() : null;
+        }
+
+        @Override
+        Map.Entry<String, Predicate> parseFilter(String input, DateDecoder decoder) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(input, decoder);
+            return parser.Filter() ? (Map.Entry) parser.value() : null;
+        }
+
+        @Override
+        Map<String, Predicate> matchQuery(String input, DateDecoder decoder) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(input, decoder);
+            if (!parser.Query() || parser.position() != input.length()) {
+                throw new QueryParseException(MetricsSink.QUERY, input, parser.furthestPosition());
+            }
+            return (Map) parser.value();
+        }
+
+        @Override
+        Map.Entry<String, Predicate> matchFilter(String input, DateDecoder decoder) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(input, decoder);
+            if (!parser.Filter() || parser.position() != input.length()) {
+                throw new QueryParseException(MetricsSink.FILTER, input, parser.furthestPosition());
+            }
+            return (Map.Entry) parser.value();
+        }
+
+        @Override
+        Prefix matchPrefix(String input, DateDecoder decoder) {
+            RecursiveDescentParser parser = new RecursiveDescentParser(input, decoder);
+            return parser.Filter() ? new Prefix((Map.Entry) parser.value(), parser.position()) : Prefix.NONE;
+        }
+
+    };
+
+    /**
+     * Parses the input with the Query rule, timed if a {@link MetricsSink} is
+     * installed
+     *
+     * @param input
+     * @param decoder decodes the date and time literals
+     * @return the predicates by dimension or null if the input does not match
+     */
+    Map<String, Predicate> query(String input, DateDecoder decoder) {
+        return (Map) parse(input, true, null, decoder);
+    }
+
+    /**
+     * Parses the input with the Filter rule, timed if a {@link MetricsSink}
+     * is installed
+     *
+     * @param input
+     * @param decoder decodes the date and time literals
+     * @return the dimension and its predicate or null if the input does not
+     * match
+     */
+    Map.Entry<String, Predicate> filter(String input, DateDecoder decoder) {
+        return (Map.Entry) parse(input, false, null, decoder);
+    }
+
+    /**
+     * Parses the whole input with the Query rule in a single pass without
+     * error reporting or recovery. Parboiled does not report where such a
+     * pass failed, so input it rejects is parsed a second time by the
+     * recursive descent parser to find the error position: invalid input
+     * costs a parboiled pass plus a recursive descent pass, valid input the
+     * parboiled pass only. The recursive descent engine needs one pass
+     * either way.
+     *
+     * @param input
+     * @param limits
+     * @param decoder decodes the date and time literals
+     * @return the predicates by dimension
+     * @throws QueryParseException if the input does not match or exceeds
+     * the limits
+     */
+    Map<String, Predicate> strictQuery(String input, ParseLimits limits, DateDecoder decoder) {
+        Map<String, Predicate> parsed = (Map) parse(input, true, limits, decoder);
+        limits.checkQuery(parsed);
+        return parsed;
+    }
+
+    /**
+     * @see #strictQuery
+     */
+    Map.Entry<String, Predicate> strictFilter(String input, ParseLimits limits, DateDecoder decoder) {
+        Map.Entry<String, Predicate> parsed = (Map.Entry) parse(input, false, limits, decoder);
+        limits.checkFilter(parsed);
+        return parsed;
+    }
+
+    /**
+     * Parses the longest prefix of the input the Filter rule matches, in a
+     * single pass however the input ends, timed like {@link #strictFilter}.
+     * As in the Query rule, a filter whose condition is followed by more
+     * input still matches.
+     *
+     * @param input
+     * @param limits
+     * @param decoder decodes the date and time literals
+     * @return the filter and the length of the input it matched, a null
+     * filter and length 0 if no prefix matches
+     * @throws QueryParseException if the input or the filter exceeds the
+     * limits
+     */
+    Prefix prefixFilter(String input, ParseLimits limits, DateDecoder decoder) {
+        Prefix parsed = (Prefix) parse(input, false, limits, decoder, true);
+        if (parsed.filter != null) {
+            limits.checkFilter(parsed.filter);
+        }
+        return parsed;
+    }
+
+    private Object parse(String input, boolean query, ParseLimits limits, DateDecoder decoder) {
+        return parse(input, query, limits, decoder, false);
+    }
+
+    /**
+     * @param limits null to parse leniently
+     * @param prefix whether to parse a {@link Prefix}
+     */
+    private Object parse(String input, boolean query, ParseLimits limits, DateDecoder decoder, boolean prefix) {
+        String rule = (query) ? MetricsSink.QUERY : MetricsSink.FILTER;
+        if (limits != null) {
+            limits.checkLength(rule, input);
+        }
+        MetricsSink sink = Metrics.sink;
+        if (sink == null) {
+            return run(input, query, limits != null, decoder, prefix);
+        }
+        long start = System.nanoTime();
+        Object parsed = null;
+        try {
+            parsed = run(input, query, limits != null, decoder, prefix);
+            return parsed;
+        } finally {
+            sink.parsed(rule, System.nanoTime() - start, parsed != null && parsed != Prefix.NONE);
+        }
+    }
+
+    private Object run(String input, boolean query, boolean strict, DateDecoder decoder, boolean prefix) {
+        if (prefix) {
+            return matchPrefix(input, decoder);
+        }
+        if (strict) {
+            return (query) ? matchQuery(input, decoder) : matchFilter(input, decoder);
+        }
+        return (query) ? parseQuery(input, decoder) : parseFilter(input, decoder);
+    }
+
+    abstract Map<String, Predicate> parseQuery(String input, DateDecoder decoder);
+
+    abstract Map.Entry<String, Predicate> parseFilter(String input, DateDecoder decoder);
+
+    /**
+     * @return the predicates by dimension
+     * @throws QueryParseException unless the whole input matches
+     */
+    abstract Map<String, Predicate> matchQuery(String input, DateDecoder decoder);
+
+    abstract Map.Entry<String, Predicate> matchFilter(String input, DateDecoder decoder);
+
+    /**
+     * @return the filter matching the longest prefix, {@link Prefix#NONE} if
+     * none does
+     */
+    abstract Prefix matchPrefix(String input, DateDecoder decoder);
+
+    /**
+     * A filter matching the input up to {@link #length}
+     */
+    static final class Prefix {
+
+        static final Prefix NONE = new Prefix(null, 0);
+
+        final Map.Entry<String, Predicate> filter;
+        final int length;
+
+        Prefix(Map.Entry<String, Predicate> filter, int length) {
+            this.filter = filter;
+            this.length = length;
+        }
+
+    }
+
+}
@@ -9,6 +9,9 @@ package de.comci.gotcount.query;
  * Replacement for JDK8 Predicate
  * To be replaced when switching to Java 8
  * 
+ * All predicates created by the parsers are immutable and may be shared
+ * between threads.
+ * 
  * @author Sebastian Maier (sebastian.maier@comci.de)
  */
 public interface Predicate<T> {
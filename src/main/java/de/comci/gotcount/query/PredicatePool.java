@@ -0,0 +1,90 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Interns predicates and dimension names, so equal ones parsed from
+ * different queries share one instance, e.g. {@code country:DE} in thousands
+ * of cached filters, see {@link FilterCache}.
+ *
+ * Instances are held weakly and dropped from the pool once no filter uses
+ * them anymore. Since interned predicates are shared, results can be
+ * memoized per predicate instance, e.g. by identity for one row tested
+ * against many filters.
+ *
+ * Instances may be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class PredicatePool {
+
+    private final Map<Object, WeakReference<Object>> pool = new WeakHashMap<>();
+
+    /**
+     * @param value a predicate or constant, e.g. a dimension name
+     * @return the pooled instance equal to value, value itself if there is
+     * none yet
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<Object> ref = pool.get(value);
+        Object pooled = (ref == null) ? null : ref.get();
+        if (pooled != null) {
+            return (T) pooled;
+        }
+        pool.put(value, new WeakReference<Object>(value));
+        return value;
+    }
+
+    /**
+     * @param filter
+     * @return an equal filter with interned dimension names and predicates
+     */
+    public Filter intern(Filter filter) {
+        if (filter.getDimensions().isEmpty()) {
+            return filter;
+        }
+        Map<String, Predicate> interned = new HashMap<>();
+        for (String dimension : filter.getDimensions()) {
+            interned.put(intern(dimension), intern(filter.getPredicate(dimension)));
+        }
+        return new Filter(interned);
+    }
+
+    /**
+     * @param bucket
+     * @return an equal bucket with interned name and predicate
+     */
+    public Bucket intern(Bucket bucket) {
+        if (!bucket.isMatched()) {
+            return bucket;
+        }
+        return new Bucket(new AbstractMap.SimpleImmutableEntry<>(intern(bucket.getName()), intern(bucket.getPredicate())));
+    }
+
+    /**
+     * @return number of pooled instances still in use
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (WeakReference<Object> ref : pool.values()) {
+            if (ref.get() != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+}
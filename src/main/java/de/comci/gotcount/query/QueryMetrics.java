@@ -0,0 +1,230 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link MetricsSink} keeping counters and latency histograms in memory,
+ * exported through JMX by {@link #register()}:
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * metrics.register();
+ * Metrics.setSink(metrics);
+ * </pre>
+ *
+ * Counters are updated without locks, a reading taken while measurements are
+ * reported may be slightly inconsistent.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class QueryMetrics implements MetricsSink, QueryMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.comci.gotcount.query:type=QueryMetrics";
+
+    private final Timer query = new Timer();
+    private final Timer filter = new Timer();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    // evaluated and passed by simple class name
+    private final ConcurrentMap<String, AtomicLongArray> evaluations = new ConcurrentHashMap<>();
+
+    @Override
+    public void parsed(String rule, long nanos, boolean matched) {
+        timer(rule).record(nanos, matched);
+    }
+
+    @Override
+    public void cacheLookup(String rule, boolean hit) {
+        (hit ? cacheHits : cacheMisses).incrementAndGet();
+    }
+
+    @Override
+    public void evaluated(Class<?> type, long evaluated, long passed) {
+        String name = type.getSimpleName();
+        AtomicLongArray counts = evaluations.get(name);
+        if (counts == null) {
+            AtomicLongArray created = new AtomicLongArray(2);
+            counts = evaluations.putIfAbsent(name, created);
+            if (counts == null) {
+                counts = created;
+            }
+        }
+        counts.addAndGet(0, evaluated);
+        counts.addAndGet(1, passed);
+    }
+
+    /**
+     * Registers this instance with the platform MBean server as
+     * {@link #OBJECT_NAME}
+     *
+     * @return the name registered
+     * @throws IllegalStateException if an instance is already registered
+     */
+    public ObjectName register() {
+        return register(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public ObjectName register(MBeanServer server) {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException ex) {
+            throw new IllegalStateException("cannot register " + OBJECT_NAME, ex);
+        }
+    }
+
+    @Override
+    public long getQueryParses() {
+        return query.count.get();
+    }
+
+    @Override
+    public long getQueryParseFailures() {
+        return query.failures.get();
+    }
+
+    @Override
+    public long[] getQueryLatencyHistogram() {
+        return query.histogram();
+    }
+
+    @Override
+    public long getFilterParses() {
+        return filter.count.get();
+    }
+
+    @Override
+    public long getFilterParseFailures() {
+        return filter.failures.get();
+    }
+
+    @Override
+    public long[] getFilterLatencyHistogram() {
+        return filter.histogram();
+    }
+
+    @Override
+    public long getLatencyPercentile(String rule, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long[] histogram = timer(rule).histogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        int i = 0;
+        while ((seen += histogram[i]) < rank) {
+            i++;
+        }
+        return (i < 63) ? 1L << i : Long.MAX_VALUE;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long lookups = hits + cacheMisses.get();
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public Map<String, Long> getEvaluations() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLongArray> e : evaluations.entrySet()) {
+            counts.put(e.getKey(), e.getValue().get(0));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getPassRatios() {
+        Map<String, Double> ratios = new TreeMap<>();
+        for (Map.Entry<String, AtomicLongArray> e : evaluations.entrySet()) {
+            long evaluated = e.getValue().get(0);
+            ratios.put(e.getKey(), (evaluated == 0) ? 0 : (double) e.getValue().get(1) / evaluated);
+        }
+        return ratios;
+    }
+
+    @Override
+    public void reset() {
+        query.reset();
+        filter.reset();
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        evaluations.clear();
+    }
+
+    private Timer timer(String rule) {
+        if (QUERY.equals(rule)) {
+            return query;
+        }
+        if (FILTER.equals(rule)) {
+            return filter;
+        }
+        throw new IllegalArgumentException("unknown rule: " + rule);
+    }
+
+    private static final class Timer {
+
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        // bucket i: less than 2^i ns
+        final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        void record(long nanos, boolean matched) {
+            count.incrementAndGet();
+            if (!matched) {
+                failures.incrementAndGet();
+            }
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+        }
+
+        long[] histogram() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return counts;
+        }
+
+        void reset() {
+            count.set(0);
+            failures.set(0);
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link QueryMetrics}. Latency histograms count
+ * parses by power of two nanoseconds: bucket i holds parses taking less than
+ * 2^i ns and at least 2^(i-1) ns.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface QueryMetricsMXBean {
+
+    long getQueryParses();
+
+    long getQueryParseFailures();
+
+    long[] getQueryLatencyHistogram();
+
+    long getFilterParses();
+
+    long getFilterParseFailures();
+
+    long[] getFilterLatencyHistogram();
+
+    /**
+     * @param rule {@link MetricsSink#QUERY} or {@link MetricsSink#FILTER}
+     * @param percentile between 0 and 100
+     * @return upper bound of the histogram bucket containing the percentile
+     * in nanoseconds, 0 if nothing was parsed
+     */
+    long getLatencyPercentile(String rule, double percentile);
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return share of cache lookups that hit, 0 if there were none
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return evaluations by simple class name of the predicate
+     */
+    Map<String, Long> getEvaluations();
+
+    /**
+     * @return share of evaluations returning true by simple class name of the
+     * predicate
+     */
+    Map<String, Double> getPassRatios();
+
+    void reset();
+
+}
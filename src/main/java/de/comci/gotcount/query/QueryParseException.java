@@ -0,0 +1,75 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Thrown by {@link Filter#parse} and {@link Bucket#parse} if the input does
+ * not match the grammar or exceeds the {@link ParseLimits}.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class QueryParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Characters of the input around the position quoted in the message
+     */
+    private static final int EXCERPT = 20;
+
+    private final String rule;
+    private final String input;
+    private final int position;
+    private final String limit;
+
+    QueryParseException(String rule, String input, int position) {
+        this.rule = rule;
+        this.input = input;
+        this.position = position;
+        this.limit = null;
+    }
+
+    QueryParseException(String rule, String limit) {
+        this.rule = rule;
+        this.input = null;
+        this.position = -1;
+        this.limit = limit;
+    }
+
+    /**
+     * Formatted when asked for, rejected input is often only counted
+     */
+    @Override
+    public String getMessage() {
+        if (limit != null) {
+            return String.format("%s exceeds a limit: %s", rule, limit);
+        }
+        return String.format("%s does not match at position %d: %s", rule, position, excerpt(input, position));
+    }
+
+    private static String excerpt(String input, int position) {
+        int from = Math.max(0, position - EXCERPT);
+        int to = Math.min(input.length(), position + EXCERPT);
+        return ((from > 0) ? "..." : "") + input.substring(from, position) + " >>" + input.substring(position, to)
+                + ((to < input.length()) ? "..." : "");
+    }
+
+    /**
+     * @return {@link MetricsSink#QUERY} or {@link MetricsSink#FILTER}
+     */
+    public String getRule() {
+        return rule;
+    }
+
+    /**
+     * @return index of the first character the input does not match at,
+     * -1 if the input matches but exceeds a limit
+     */
+    public int getPosition() {
+        return position;
+    }
+
+}
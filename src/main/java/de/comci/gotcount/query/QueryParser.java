@@ -1,19 +1,23 @@
 package de.comci.gotcount.query;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import org.parboiled.BaseParser;
 import org.parboiled.Rule;
 import org.parboiled.annotations.BuildParseTree;
 import org.parboiled.annotations.SuppressSubnodes;
 import org.parboiled.support.StringVar;
+import org.parboiled.support.Var;
 
 /**
  * Query := Filter(';' Filter) 
@@ -29,26 +33,53 @@ import org.parboiled.support.StringVar;
 @BuildParseTree
 class QueryParser extends BaseParser<Object> {
 
-    Map<String, Predicate> map = new HashMap<>();
+    /**
+     * Decodes the date and time literals, set by {@link Parser} per run
+     */
+    DateDecoder decoder = DateDecoder.getDefault();
 
     Rule Query() {
-
+        // the map lives in a Var so it is created per run and not shared
+        // between runs of the same parser instance
+        Var<Map<String, Predicate>> map = new Var<>();
         return Sequence(
+                ACTION(map.set(new HashMap<String, Predicate>())),
                 Filter(),
-                addToMap((Map.Entry<String,Predicate>) pop()),
+                addToMap(map.get(), (Map.Entry<String,Predicate>) pop()),
                 ZeroOrMore(
                         Sequence(
                                 TestNot(String("\\")),
                                 String(";"),
                                 Filter(),
-                                addToMap((Map.Entry<String,Predicate>) pop())
+                                addToMap(map.get(), (Map.Entry<String,Predicate>) pop())
                         )
                 ),
-                push(map)
+                push(map.get())
         );
     }
 
-    boolean addToMap(Map.Entry<String,Predicate> entry) {
+    /**
+     * Query matching the whole input
+     */
+    Rule StrictQuery() {
+        return Sequence(Query(), EOI);
+    }
+
+    /**
+     * Filter matching the whole input
+     */
+    Rule StrictFilter() {
+        return Sequence(Filter(), EOI);
+    }
+
+    /**
+     * Filter matching a prefix of the input, with the length of the prefix
+     */
+    Rule PrefixFilter() {
+        return Sequence(Filter(), push(new ParserEngine.Prefix((Map.Entry<String, Predicate>) pop(), currentIndex())));
+    }
+
+    boolean addToMap(Map<String, Predicate> map, Map.Entry<String,Predicate> entry) {
         map.put(entry.getKey(), entry.getValue());
         return true;
     }
@@ -141,20 +172,22 @@ class QueryParser extends BaseParser<Object> {
     }
 
     Rule AtomList() {
-        List l = new LinkedList();
+        // a fresh list per invocation, see Query()
+        Var<List<Object>> l = new Var<>();
         return Sequence(
+                ACTION(l.set(new LinkedList<>())),
                 ListContent(),
-                addToList(l, pop()),
+                addToList(l.get(), pop()),
                 ZeroOrMore(
                         Sequence(
                                 ZeroOrMore(String(" ")),
                                 String(","),
                                 ZeroOrMore(String(" ")),
                                 ListContent(),
-                                addToList(l, pop())
+                                addToList(l.get(), pop())
                         )
                 ),
-                push(l)
+                push(l.get())
         );
     }
 
@@ -173,11 +206,11 @@ class QueryParser extends BaseParser<Object> {
         return FirstOf(
                 Sequence(
                         Time(),
-                        push(new DefaultCheck<>((Date) pop(), isNot, Date.class))
+                        push(new DateCheck((Date) pop(), isNot))
                 ),
                 Sequence(
                         Date(),
-                        push(new DefaultCheck<>((Date) pop(), isNot, Date.class))
+                        push(new DateCheck((Date) pop(), isNot))
                 ),
                 Sequence(
                         Number(),
@@ -230,7 +263,7 @@ class QueryParser extends BaseParser<Object> {
                 ),
                 // push the double value to the stack removing the previous
                 // 2 integer values
-                push(Double.parseDouble(matchOrDefault("0")))
+                drop() && drop() && push(Double.parseDouble(matchOrDefault("0")))
         );
     }
 
@@ -268,21 +301,10 @@ class QueryParser extends BaseParser<Object> {
     Rule Date() {
         return Sequence(
                 ISODateOnlyFormat(),
-                push(parseDate(match(), "yyyy-MM-dd"))
+                push(new Date(decoder.dateMillis(match(), 0)))
         );
     }
 
-    Date parseDate(String input, String format) {
-        SimpleDateFormat sdf = new SimpleDateFormat(format);
-        Date date = null;
-        try {
-            date = sdf.parse(input);
-        } catch (ParseException ex) {
-            // ignore
-        }
-        return date;
-    }
-
     Rule Hour() {
         return FirstOf(
                 Sequence(
@@ -318,10 +340,10 @@ class QueryParser extends BaseParser<Object> {
     Rule Time() {
         return FirstOf(
                 Sequence(TimeWithSeconds(),
-                        push(parseDate(match(), "HH:mm:ss"))
+                        push(new Date(decoder.timeMillis(match(), 0, matchLength())))
                 ),
                 Sequence(TimeWithoutSeconds(),
-                        push(parseDate(match(), "HH:mm"))
+                        push(new Date(decoder.timeMillis(match(), 0, matchLength())))
                 )
         );
     }
@@ -359,34 +381,112 @@ class QueryParser extends BaseParser<Object> {
         return FirstOf(split);
     }
 
-    public static class NumberCheck extends DefaultCheck<Number> {
+    /**
+     * Makes predicate constants immune to changes by the caller: dates are
+     * copied and lists are copied into unmodifiable lists.
+     */
+    static <T> T immutable(T value) {
+        if (value instanceof Date) {
+            return (T) ((Date) value).clone();
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>(((List) value).size());
+            for (Object o : (List) value) {
+                copy.add(immutable(o));
+            }
+            return (T) Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    public static class NumberCheck extends DefaultCheck<Number> implements LongPredicate, DoublePredicate, BatchPredicate {
+
+        private final double number;
 
         public NumberCheck(Number value, boolean isNot) {
             super(value, isNot, Number.class);
+            this.number = value.doubleValue();
         }
 
         @Override
         public boolean test(Number value) {
-            typeCheck(value);
-            return ((v == value) || (v.doubleValue() == ((Number) value).doubleValue())) ^ isNot; // is in 'a xor b'
+            // no typeCheck: the bridge method already casts to Number
+            return ((v == value) || (number == value.doubleValue())) ^ isNot; // is in 'a xor b'
+        }
+
+        @Override
+        public boolean testLong(long value) {
+            return (number == value) ^ isNot;
+        }
+
+        @Override
+        public boolean testDouble(double value) {
+            return (number == value) ^ isNot;
+        }
+
+        @Override
+        public void selectLong(long[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectLong(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectInt(int[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectInt(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectDouble(double[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectDouble(this, values, offset, length, selection, and);
         }
     }
 
-    public static class DefaultCheck<T> implements Predicate<T> {
+    /**
+     * Equality check of a date or time, also usable on epoch millis
+     */
+    public static class DateCheck extends DefaultCheck<Date> implements LongPredicate {
+
+        private final long millis;
+
+        public DateCheck(Date value, boolean isNot) {
+            super(value, isNot, Date.class);
+            this.millis = value.getTime();
+        }
+
+        @Override
+        boolean matches(Date value) {
+            return millis == value.getTime(); // same as Date.equals
+        }
+
+        @Override
+        public boolean testLong(long epochMillis) {
+            return (millis == epochMillis) ^ isNot;
+        }
+    }
+
+    public static class DefaultCheck<T> implements Predicate<T>, ScanPredicate {
 
         final T v;
         final boolean isNot;
-        private final Class<? extends T> type;
+        final Class<? extends T> type;
+        // decided once, so typeCheck only reflects on subclasses of non
+        // final types
+        private final boolean anyType;
+        private final boolean finalType;
 
         public DefaultCheck(T value, boolean isNot, Class<? extends T> type) {
-            this.v = value;
+            this.v = immutable(value);
             this.isNot = isNot;
             this.type = type;
+            this.anyType = type == Object.class;
+            this.finalType = Modifier.isFinal(type.getModifiers());
         }
 
         public final boolean typeCheck(T value) {
-            if (value != null && !type.isAssignableFrom(value.getClass())) {
-                throw new IllegalArgumentException("not a " + type.getSimpleName());
+            if (value != null && !anyType) {
+                Class<?> c = value.getClass();
+                if (c != type && (finalType || !type.isAssignableFrom(c))) {
+                    throw new IllegalArgumentException("not a " + type.getSimpleName());
+                }
             }
             return true;
         }
@@ -394,7 +494,24 @@ class QueryParser extends BaseParser<Object> {
         @Override
         public boolean test(T value) {
             typeCheck(value);
-            return ((v == value) || (v != null && v.equals(value))) ^ isNot; // is in 'a xor b'
+            return ((v == value) || (value != null && matches(value))) ^ isNot; // is in 'a xor b'
+        }
+
+        /**
+         * @param value a non null value that passed the type check
+         * @return whether the value equals the constant
+         */
+        boolean matches(T value) {
+            return v != null && v.equals(value);
+        }
+
+        /**
+         * @return a lookup of the constant, its complement if negated
+         */
+        @Override
+        public ScanPlan toScanPlan() {
+            ScanPlan plan = ScanPlan.points(Collections.singletonList(v));
+            return (isNot) ? plan.complement() : plan;
         }
 
         @Override
@@ -434,27 +551,158 @@ class QueryParser extends BaseParser<Object> {
         
     }
     
-    public static class RangeCheck implements Predicate<Comparable> {
+    public static class RangeCheck implements Predicate<Comparable>, LongPredicate, DoublePredicate, BatchPredicate, ScanPredicate {
 
         private final boolean toInclusive;
         private final boolean fromInclusive;
         private final Comparable to;
         private final Comparable from;
 
+        // bounds of the primitive paths, dates as epoch millis
+        private final Class<?> type; // of both bounds, null if they differ
+        private final boolean dates;
+        private final boolean numeric;
+        private final boolean integral;
+        private final long lowest; // inclusive
+        private final long highest; // inclusive
+        private final double fromDouble;
+        private final double toDouble;
+
         public RangeCheck(Comparable from, boolean fromInclusive, Comparable to, boolean toInclusive) {
             if (from.compareTo(to) > 0) {
-                this.from = to;
-                this.to = from;
+                this.from = immutable(to);
+                this.to = immutable(from);
             } else {
-                this.from = from;
-                this.to = to;
+                this.from = immutable(from);
+                this.to = immutable(to);
             }
             this.fromInclusive = fromInclusive;
             this.toInclusive = toInclusive;
+            this.type = (this.from.getClass() == this.to.getClass()) ? this.from.getClass() : null;
+            this.dates = this.from instanceof Date;
+            this.integral = isIntegral(this.from) && isIntegral(this.to);
+            this.numeric = integral || (this.from instanceof Number && this.to instanceof Number);
+            long fromLong = (integral) ? longValue(this.from) : 0;
+            long toLong = (integral) ? longValue(this.to) : 0;
+            if ((!fromInclusive && fromLong == java.lang.Long.MAX_VALUE) || (!toInclusive && toLong == java.lang.Long.MIN_VALUE)) {
+                this.lowest = java.lang.Long.MAX_VALUE; // empty
+                this.highest = java.lang.Long.MIN_VALUE;
+            } else {
+                this.lowest = (fromInclusive) ? fromLong : fromLong + 1;
+                this.highest = (toInclusive) ? toLong : toLong - 1;
+            }
+            this.fromDouble = (integral) ? fromLong : (numeric) ? ((Number) this.from).doubleValue() : 0;
+            this.toDouble = (integral) ? toLong : (numeric) ? ((Number) this.to).doubleValue() : 0;
+        }
+
+        private static boolean isIntegral(Comparable c) {
+            return c instanceof Long || c instanceof Integer || c instanceof Short || c instanceof Byte || c instanceof Date;
+        }
+
+        Comparable getFrom() {
+            return from;
+        }
+
+        Comparable getTo() {
+            return to;
+        }
+
+        boolean isFromInclusive() {
+            return fromInclusive;
+        }
+
+        boolean isToInclusive() {
+            return toInclusive;
+        }
+
+        /**
+         * @return true if both bounds are integral numbers or dates, which
+         * are then given by {@link #lowest()} and {@link #highest()}
+         */
+        boolean isIntegral() {
+            return integral;
+        }
+
+        /**
+         * @return the inclusive lower bound of an integral range, greater
+         * than {@link #highest()} if the range is empty
+         */
+        long lowest() {
+            return lowest;
+        }
+
+        long highest() {
+            return highest;
+        }
+
+        private static long longValue(Comparable c) {
+            return (c instanceof Date) ? ((Date) c).getTime() : ((Number) c).longValue();
+        }
+
+        @Override
+        public boolean testLong(long test) {
+            if (!integral) {
+                return testDouble(test);
+            }
+            return test >= lowest && test <= highest;
+        }
+
+        @Override
+        public boolean testDouble(double test) {
+            if (!numeric) {
+                throw new IllegalArgumentException(String.format("not a numeric range: %s", from.getClass()));
+            }
+            return ((fromInclusive) ? test >= fromDouble : test > fromDouble)
+                    && ((toInclusive) ? test <= toDouble : test < toDouble);
+        }
+
+        @Override
+        public void selectLong(long[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectLong(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectInt(int[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectInt(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectDouble(double[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectDouble(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public ScanPlan toScanPlan() {
+            return ScanPlan.range(from, fromInclusive, to, toInclusive);
         }
 
         @Override
         public boolean test(Comparable test) {
+            // kept small so it inlines, the paths are separate methods
+            if (test.getClass() == type) {
+                return testSameType(test);
+            }
+            return testCompatible(test);
+        }
+
+        /**
+         * Same type as the bounds: compare primitives
+         */
+        private boolean testSameType(Comparable test) {
+            if (integral) {
+                return testLong((dates) ? ((Date) test).getTime() : ((Number) test).longValue());
+            }
+            if (type == java.lang.Double.class) {
+                // Double.compare keeps the ordering of Double.compareTo
+                double d = (java.lang.Double) test;
+                int lower = java.lang.Double.compare(d, fromDouble);
+                int upper = java.lang.Double.compare(d, toDouble);
+                return (lower > 0 || (fromInclusive && lower == 0)) && (upper < 0 || (toInclusive && upper == 0));
+            }
+            return testCompatible(test);
+        }
+
+        private boolean testCompatible(Comparable test) {
             
             boolean lowerBorder, upperBorder;
             
@@ -465,7 +713,7 @@ class QueryParser extends BaseParser<Object> {
                 lowerBorder = (fromInclusive && from.compareTo(test) <= 0) || (from.compareTo(test) < 0);
                 upperBorder = (toInclusive && to.compareTo(test) >= 0) || (to.compareTo(test) > 0);
             } else {
-                throw new RuntimeException(String.format("types not compatible for comparison: %s <> %s", test.getClass(), from.getClass()));
+                throw new IllegalArgumentException(String.format("types not compatible for comparison: %s <> %s", test.getClass(), from.getClass()));
             }
             
             return lowerBorder && upperBorder;
@@ -513,16 +761,187 @@ class QueryParser extends BaseParser<Object> {
         
     }
 
-    public static class ListCheck<T> extends DefaultCheck<T> {
+    /**
+     * Checks the membership in a list of values.
+     *
+     * Integral members are kept as a sorted long array, other numbers as a
+     * sorted double array, both searched binary, so the primitive tests do
+     * not box. The members of a list of dates are kept as sorted epoch
+     * millis, see {@link DateCheck}. Any other member is kept in a hash set.
+     * Numbers are normalized, so an Integer matches an equal Long or Double
+     * member the way {@link NumberCheck} does.
+     */
+    public static class ListCheck<T> extends DefaultCheck<T> implements LongPredicate, DoublePredicate, BatchPredicate {
+
+        private static final long[] NO_LONGS = new long[0];
+        private static final double[] NO_DOUBLES = new double[0];
+
+        // integral members, or the epoch millis of a list of dates
+        private final long[] longs;
+        // members with a fraction
+        private final double[] doubles;
+        private final boolean dates;
+        // other members, null if there are none
+        private final Set<Object> members;
+        // of the list, computed once as lists may be long
+        private final int hash;
 
         public ListCheck(T value, boolean isNot, Class<? extends T> type) {
             super(value, isNot, type);
+            List<?> list = (List<?>) v;
+            boolean allDates = !list.isEmpty();
+            for (Object o : list) {
+                allDates &= o instanceof Date;
+            }
+            List<Long> integral = new ArrayList<>();
+            List<java.lang.Double> fractions = new ArrayList<>();
+            Set<Object> others = new HashSet<>();
+            for (Object o : list) {
+                Object n = (allDates) ? ((Date) o).getTime() : normalize(o);
+                if (n instanceof Long) {
+                    integral.add((Long) n);
+                } else if (n instanceof java.lang.Double) {
+                    fractions.add((java.lang.Double) n);
+                } else {
+                    others.add(n);
+                }
+            }
+            long[] l = new long[integral.size()];
+            for (int i = 0; i < l.length; i++) {
+                l[i] = integral.get(i);
+            }
+            longs = (l.length == 0) ? NO_LONGS : distinct(l);
+            double[] d = new double[fractions.size()];
+            for (int i = 0; i < d.length; i++) {
+                d[i] = fractions.get(i);
+            }
+            doubles = (d.length == 0) ? NO_DOUBLES : distinct(d);
+            dates = allDates;
+            members = (others.isEmpty()) ? null : Collections.unmodifiableSet(others);
+            hash = super.hashCode();
+        }
+
+        private static long[] distinct(long[] values) {
+            Arrays.sort(values);
+            int n = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (i == 0 || values[i] != values[n - 1]) {
+                    values[n++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, n);
+        }
+
+        private static double[] distinct(double[] values) {
+            Arrays.sort(values);
+            int n = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (i == 0 || values[i] != values[n - 1]) {
+                    values[n++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, n);
         }
 
         @Override
         public boolean test(T value) {
             typeCheck(value);
-            return ((List) v).contains(value) ^ isNot;
+            return contains(value) ^ isNot;
+        }
+
+        /**
+         * @return lookups of the members, their complement if negated
+         */
+        @Override
+        public ScanPlan toScanPlan() {
+            ScanPlan plan = ScanPlan.points((List<?>) v);
+            return (isNot) ? plan.complement() : plan;
+        }
+
+        private boolean contains(Object value) {
+            if (value instanceof Date && dates) {
+                return Arrays.binarySearch(longs, ((Date) value).getTime()) >= 0;
+            }
+            if (value instanceof Number && !dates) {
+                Object n = normalize(value);
+                if (n instanceof Long) {
+                    return Arrays.binarySearch(longs, (Long) n) >= 0;
+                }
+                return Arrays.binarySearch(doubles, (java.lang.Double) n) >= 0;
+            }
+            return members != null && members.contains(value);
+        }
+
+        /**
+         * @param value a number, or epoch millis if the members are dates
+         */
+        @Override
+        public boolean testLong(long value) {
+            return (Arrays.binarySearch(longs, value) >= 0) ^ isNot;
+        }
+
+        @Override
+        public boolean testDouble(double value) {
+            if (value == (long) value) {
+                return testLong((long) value);
+            }
+            return (Arrays.binarySearch(doubles, value) >= 0) ^ isNot;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Equal to {@link DefaultCheck#equals}: the parsed lists are equal,
+         * in the same order
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass() || hash != ((ListCheck<?>) obj).hash) {
+                return false;
+            }
+            return super.equals(obj);
+        }
+
+        @Override
+        public void selectLong(long[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectLong(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectInt(int[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectInt(this, values, offset, length, selection, and);
+        }
+
+        @Override
+        public void selectDouble(double[] values, int offset, int length, long[] selection, boolean and) {
+            Bitmaps.selectDouble(this, values, offset, length, selection, and);
+        }
+
+        /**
+         * Integral numbers and whole doubles become Long, all other numbers
+         * Double, everything else is returned as is.
+         */
+        static Object normalize(Object value) {
+            if (value instanceof Long) {
+                return value;
+            }
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            }
+            if (value instanceof Number) {
+                double d = ((Number) value).doubleValue();
+                if (d == (long) d) {
+                    return (long) d;
+                }
+                return d;
+            }
+            return value;
         }
 
     }
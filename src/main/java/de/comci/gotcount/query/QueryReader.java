@@ -0,0 +1,397 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads newline separated filter or bucket definitions and parses them
+ * lazily, one {@link Line} per non-blank input line in input order.
+ *
+ * Each line has to match the grammar as a whole and stay within the
+ * {@link ParseLimits}, see {@link Filter#parse}. A line that does not is
+ * returned with its error and the position it fails at instead of a value,
+ * the following lines are read as usual. With more than one thread, lines
+ * ahead of the current one are parsed in parallel, the order of the returned
+ * lines stays the order of the input.
+ *
+ * Parsing uses the engine's parser cached for the calling (or worker) thread,
+ * so no parser is built per line. The reader is closed once all lines are
+ * read or by {@link #close()}.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ * @param <T> {@link Filter} or {@link Bucket}
+ */
+public final class QueryReader<T> implements Iterator<QueryReader.Line<T>>, Closeable {
+
+    public static QueryReader<Filter> filters(Reader in) {
+        return filters(in, ParserEngine.PARBOILED, 1);
+    }
+
+    public static QueryReader<Filter> filters(Reader in, ParserEngine engine, int threads) {
+        return filters(in, engine, ParseLimits.DEFAULT, DateDecoder.getDefault(), threads);
+    }
+
+    /**
+     * @param in one query per line
+     * @param engine
+     * @param limits the limits each line is held to
+     * @param decoder decodes the date and time literals
+     * @param threads number of threads parsing, 1 to parse on the calling
+     * thread
+     * @return
+     */
+    public static QueryReader<Filter> filters(Reader in, ParserEngine engine, ParseLimits limits, DateDecoder decoder, int threads) {
+        return new QueryReader<>(in, FILTERS, engine, limits, decoder, threads);
+    }
+
+    public static QueryReader<Filter> filters(Path path) throws IOException {
+        return filters(path, ParserEngine.PARBOILED, 1);
+    }
+
+    /**
+     * @param path UTF-8 encoded file with one query per line
+     * @param engine
+     * @param threads number of threads parsing, 1 to parse on the calling
+     * thread
+     * @return
+     * @throws IOException if the file cannot be opened
+     */
+    public static QueryReader<Filter> filters(Path path, ParserEngine engine, int threads) throws IOException {
+        return filters(path, engine, ParseLimits.DEFAULT, DateDecoder.getDefault(), threads);
+    }
+
+    public static QueryReader<Filter> filters(Path path, ParserEngine engine, ParseLimits limits, DateDecoder decoder, int threads) throws IOException {
+        return filters(Files.newBufferedReader(path, StandardCharsets.UTF_8), engine, limits, decoder, threads);
+    }
+
+    public static QueryReader<Bucket> buckets(Reader in) {
+        return buckets(in, ParserEngine.PARBOILED, 1);
+    }
+
+    public static QueryReader<Bucket> buckets(Reader in, ParserEngine engine, int threads) {
+        return buckets(in, engine, ParseLimits.DEFAULT, DateDecoder.getDefault(), threads);
+    }
+
+    /**
+     * @param in one bucket definition per line
+     * @param engine
+     * @param limits the limits each line is held to
+     * @param decoder decodes the date and time literals
+     * @param threads number of threads parsing, 1 to parse on the calling
+     * thread
+     * @return
+     */
+    public static QueryReader<Bucket> buckets(Reader in, ParserEngine engine, ParseLimits limits, DateDecoder decoder, int threads) {
+        return new QueryReader<>(in, BUCKETS, engine, limits, decoder, threads);
+    }
+
+    public static QueryReader<Bucket> buckets(Path path) throws IOException {
+        return buckets(path, ParserEngine.PARBOILED, 1);
+    }
+
+    /**
+     * @param path UTF-8 encoded file with one bucket definition per line
+     * @param engine
+     * @param threads number of threads parsing, 1 to parse on the calling
+     * thread
+     * @return
+     * @throws IOException if the file cannot be opened
+     */
+    public static QueryReader<Bucket> buckets(Path path, ParserEngine engine, int threads) throws IOException {
+        return buckets(path, engine, ParseLimits.DEFAULT, DateDecoder.getDefault(), threads);
+    }
+
+    public static QueryReader<Bucket> buckets(Path path, ParserEngine engine, ParseLimits limits, DateDecoder decoder, int threads) throws IOException {
+        return buckets(Files.newBufferedReader(path, StandardCharsets.UTF_8), engine, limits, decoder, threads);
+    }
+
+    /**
+     * Lines read ahead per parsing thread
+     */
+    private static final int LINES_PER_THREAD = 16;
+
+    private final BufferedReader in;
+    private final Kind<T> kind;
+    private final ParserEngine engine;
+    private final ParseLimits limits;
+    private final DateDecoder decoder;
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<Future<Line<T>>> pending = new ArrayDeque<>();
+
+    private int lineNumber;
+    private boolean closed;
+
+    private QueryReader(Reader in, Kind<T> kind, ParserEngine engine, ParseLimits limits, DateDecoder decoder, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.in = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+        this.kind = kind;
+        this.engine = engine;
+        this.limits = limits;
+        this.decoder = decoder;
+        this.executor = (threads == 1) ? null : Executors.newFixedThreadPool(threads, new Workers());
+        this.window = (threads == 1) ? 1 : threads * LINES_PER_THREAD;
+    }
+
+    /**
+     * @return true if there is another non-blank line
+     * @throws UncheckedIOException if reading fails
+     */
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return the next non-blank line with its parsed value or error
+     * @throws UncheckedIOException if reading fails
+     */
+    @Override
+    public Line<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Future<Line<T>> head = pending.poll();
+        // keep the workers busy while waiting for the head
+        fill();
+        try {
+            return head.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while parsing", ex);
+        } catch (ExecutionException ex) {
+            // parse errors are caught per line, so this is an Error
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Closes the underlying reader and stops parsing lines read ahead
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        pending.clear();
+        end(true);
+    }
+
+    private void fill() {
+        while (!closed && pending.size() < window) {
+            String text = readLine();
+            if (text == null) {
+                try {
+                    end(false);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            } else if (!text.trim().isEmpty()) {
+                FutureTask<Line<T>> task = new FutureTask<>(new Parse(lineNumber, text));
+                if (executor == null) {
+                    task.run();
+                } else {
+                    executor.execute(task);
+                }
+                pending.add(task);
+            }
+        }
+    }
+
+    private String readLine() {
+        try {
+            String text = in.readLine();
+            lineNumber++;
+            return text;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void end(boolean abort) throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor != null) {
+            if (abort) {
+                executor.shutdownNow();
+            } else {
+                // lines already submitted are still parsed
+                executor.shutdown();
+            }
+        }
+        in.close();
+    }
+
+    /**
+     * A parsed input line
+     *
+     * @param <T> {@link Filter} or {@link Bucket}
+     */
+    public static final class Line<T> {
+
+        private final int number;
+        private final String text;
+        private final T value;
+        private final String error;
+        private final int position;
+
+        Line(int number, String text, T value, String error, int position) {
+            this.number = number;
+            this.text = text;
+            this.value = value;
+            this.error = error;
+            this.position = position;
+        }
+
+        /**
+         * @return the 1-based line number in the input
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the parsed filter or bucket, null if the line is not valid
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return why the line could not be parsed, null if it is valid
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return index of the first character of the text the line does not
+         * match at, -1 if it is valid or failed otherwise, see
+         * {@link QueryParseException#getPosition()}
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return number + ": " + ((error == null) ? text : error);
+        }
+
+    }
+
+    private final class Parse implements Callable<Line<T>> {
+
+        private final int number;
+        private final String text;
+
+        Parse(int number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+
+        @Override
+        public Line<T> call() {
+            try {
+                return new Line<>(number, text, kind.parse(text, engine, limits, decoder), null, -1);
+            } catch (QueryParseException ex) {
+                return new Line<>(number, text, null, "line " + number + ": " + ex.getMessage(), ex.getPosition());
+            } catch (RuntimeException ex) {
+                return new Line<>(number, text, null, "line " + number + ": " + ex, -1);
+            }
+        }
+
+    }
+
+    /**
+     * Parses one line as a whole, throwing {@link QueryParseException} if it
+     * does not match
+     */
+    private interface Kind<T> {
+
+        T parse(String text, ParserEngine engine, ParseLimits limits, DateDecoder decoder);
+
+    }
+
+    private static final Kind<Filter> FILTERS = new Kind<Filter>() {
+
+        @Override
+        public Filter parse(String text, ParserEngine engine, ParseLimits limits, DateDecoder decoder) {
+            return Filter.parse(text, engine, limits, decoder);
+        }
+
+    };
+
+    private static final Kind<Bucket> BUCKETS = new Kind<Bucket>() {
+
+        @Override
+        public Bucket parse(String text, ParserEngine engine, ParseLimits limits, DateDecoder decoder) {
+            return Bucket.parse(text, engine, limits, decoder);
+        }
+
+    };
+
+    /**
+     * Daemon threads, so a reader that is never closed does not keep the VM
+     * alive
+     */
+    private static final class Workers implements ThreadFactory {
+
+        private static final AtomicInteger READERS = new AtomicInteger();
+
+        private final String prefix = "query-reader-" + READERS.incrementAndGet() + "-";
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,460 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written recursive descent implementation of the {@link QueryParser}
+ * grammar.
+ *
+ * The input is scanned directly, no classes are generated at runtime and no
+ * value stack is used. Every rule method mirrors the parboiled rule of the same
+ * name: it returns whether it matched, leaves the produced value in
+ * {@link #value()} and resets the position if it did not match.
+ *
+ * An instance is bound to one input and must not be shared between threads.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+final class RecursiveDescentParser {
+
+    private final CharSequence input;
+    private final int length;
+    private final DateDecoder decoder;
+    private int pos;
+    private int furthest;
+    private Object value;
+
+    RecursiveDescentParser(CharSequence input) {
+        this(input, DateDecoder.getDefault());
+    }
+
+    /**
+     * @param input
+     * @param decoder decodes the date and time literals
+     */
+    RecursiveDescentParser(CharSequence input, DateDecoder decoder) {
+        this.input = input;
+        this.length = input.length();
+        this.decoder = decoder;
+    }
+
+    /**
+     * @return the value produced by the last matching rule
+     */
+    Object value() {
+        return value;
+    }
+
+    /**
+     * @return the current position in the input
+     */
+    int position() {
+        return pos;
+    }
+
+    /**
+     * @return the furthest position any rule matched up to, the first
+     * character the input does not match at if the input is invalid
+     */
+    int furthestPosition() {
+        return Math.max(furthest, pos);
+    }
+
+    boolean Query() {
+        Map<String, Predicate> map = new HashMap<>();
+        if (!Filter()) {
+            return false;
+        }
+        addToMap(map);
+        while (true) {
+            int mark = pos;
+            if (next(';') && Filter()) {
+                addToMap(map);
+            } else {
+                reset(mark);
+                break;
+            }
+        }
+        value = map;
+        return true;
+    }
+
+    private void addToMap(Map<String, Predicate> map) {
+        Map.Entry<String, Predicate> entry = (Map.Entry<String, Predicate>) value;
+        map.put(entry.getKey(), entry.getValue());
+    }
+
+    boolean Filter() {
+        int start = pos;
+        if (Dimension()) {
+            String dimension = (String) value;
+            if (next(':') && Condition()) {
+                value = new AbstractMap.SimpleEntry<>(dimension, (Predicate) value);
+                return true;
+            }
+        }
+        return reset(start);
+    }
+
+    boolean Dimension() {
+        int start = pos;
+        boolean masked = false;
+        while (pos < length) {
+            char c = input.charAt(pos);
+            if (isChar(c) || isDigit(c) || c == '-' || c == '_' || c == ' ') {
+                pos++;
+            } else if (isEscapedControlChar(pos)) {
+                masked = true;
+                pos += 2;
+            } else {
+                break;
+            }
+        }
+        if (pos == start) {
+            return false;
+        }
+        String dimension = input.subSequence(start, pos).toString();
+        value = (masked) ? dimension.replace("\\", "") : dimension; // remove the mask
+        return true;
+    }
+
+    boolean Condition() {
+        return ListPredicate() || Predicate();
+    }
+
+    boolean Predicate() {
+        int start = pos;
+        if (next('!')) {
+            if (Content(true)) {
+                return true;
+            }
+            reset(start);
+        }
+        return Content(false);
+    }
+
+    boolean ListPredicate() {
+        int start = pos;
+        boolean isNot = next('!');
+        if (next('{') && AtomList()) {
+            List<Object> list = (List<Object>) value;
+            if (next('}')) {
+                value = new QueryParser.ListCheck<>(list, isNot, Object.class);
+                return true;
+            }
+        }
+        reset(start);
+        return Range();
+    }
+
+    boolean Range() {
+        int start = pos;
+        if (!peek('[') && !peek('(')) {
+            return false;
+        }
+        boolean fromInclusive = input.charAt(pos) == '[';
+        pos++;
+        int afterOpen = pos;
+        if (Date()) {
+            if (rangeEnd(fromInclusive)) {
+                return true;
+            }
+            reset(afterOpen);
+        }
+        if (Number() && rangeEnd(fromInclusive)) {
+            return true;
+        }
+        return reset(start);
+    }
+
+    /**
+     * Matches the remainder of a range after the lower bound: ',' upper bound
+     * and the closing bracket, where the upper bound has to be of the same
+     * kind as the lower bound.
+     */
+    private boolean rangeEnd(boolean fromInclusive) {
+        Comparable from = (Comparable) value;
+        boolean isDate = from instanceof Date;
+        if (next(',') && (isDate ? Date() : Number()) && (peek(']') || peek(')'))) {
+            boolean toInclusive = input.charAt(pos) == ']';
+            pos++;
+            value = new QueryParser.RangeCheck(from, fromInclusive, (Comparable) value, toInclusive);
+            return true;
+        }
+        return false;
+    }
+
+    boolean AtomList() {
+        List<Object> list = new ArrayList<>();
+        if (!ListContent()) {
+            return false;
+        }
+        list.add(value);
+        while (true) {
+            int mark = pos;
+            skipSpaces();
+            if (next(',')) {
+                skipSpaces();
+                if (ListContent()) {
+                    list.add(value);
+                    continue;
+                }
+            }
+            reset(mark);
+            break;
+        }
+        value = list;
+        return true;
+    }
+
+    boolean ListContent() {
+        return Time() || Date() || Number() || String();
+    }
+
+    boolean Content(boolean isNot) {
+        if (Time() || Date()) {
+            value = new QueryParser.DateCheck((Date) value, isNot);
+            return true;
+        }
+        if (Number()) {
+            value = new QueryParser.NumberCheck((Number) value, isNot);
+            return true;
+        }
+        if (String()) {
+            value = new QueryParser.DefaultCheck<>((String) value, isNot, String.class);
+            return true;
+        }
+        return false;
+    }
+
+    boolean Number() {
+        int start = pos;
+        if ((Double() || Long()) && EndOfAtom()) {
+            return true;
+        }
+        return reset(start);
+    }
+
+    boolean Long() {
+        int start = pos;
+        next('-');
+        if (!Digits()) {
+            return reset(start);
+        }
+        value = parseLong(input, start, pos);
+        return true;
+    }
+
+    boolean Double() {
+        int start = pos;
+        next('-');
+        if (Digits() && next('.') && Digits()) {
+            value = java.lang.Double.parseDouble(input.subSequence(start, pos).toString());
+            return true;
+        }
+        return reset(start);
+    }
+
+    private boolean Digits() {
+        int start = pos;
+        while (pos < length && isDigit(input.charAt(pos))) {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    boolean Date() {
+        int start = pos;
+        if (digits(4) && next('-') && digits(2) && next('-') && digits(2)) {
+            value = new Date(decoder.dateMillis(input, start));
+            return true;
+        }
+        return reset(start);
+    }
+
+    boolean Time() {
+        int start = pos;
+        if (!(Hour() && next(':') && MinutesOrSeconds())) {
+            return reset(start);
+        }
+        int withoutSeconds = pos;
+        if (next(':') && MinutesOrSeconds()) {
+            value = new Date(decoder.timeMillis(input, start, pos));
+            return true;
+        }
+        reset(withoutSeconds);
+        value = new Date(decoder.timeMillis(input, start, pos));
+        return true;
+    }
+
+    private boolean Hour() {
+        if (pos + 1 >= length) {
+            return false;
+        }
+        char h = input.charAt(pos);
+        char l = input.charAt(pos + 1);
+        if (((h == '0' || h == '1') && isDigit(l)) || (h == '2' && l >= '0' && l <= '3')) {
+            pos += 2;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean MinutesOrSeconds() {
+        if (pos + 1 >= length) {
+            return false;
+        }
+        char h = input.charAt(pos);
+        char l = input.charAt(pos + 1);
+        if (h >= '0' && h <= '5' && isDigit(l)) {
+            pos += 2;
+            return true;
+        }
+        return false;
+    }
+
+    boolean String() {
+        int start = pos;
+        StringBuilder unmasked = null;
+        while (pos < length) {
+            char c = input.charAt(pos);
+            if (isChar(c) || isDigit(c) || c == '.' || c == '+' || c == '/') {
+                if (unmasked != null) {
+                    unmasked.append(c);
+                }
+                pos++;
+            } else if (isEscapedControlChar(pos)) {
+                if (unmasked == null) {
+                    unmasked = new StringBuilder(input.subSequence(start, pos));
+                }
+                unmasked.append(input.charAt(pos + 1));
+                pos += 2;
+            } else {
+                break;
+            }
+        }
+        if (!EndOfAtom()) {
+            return reset(start);
+        }
+        if (unmasked != null) {
+            value = unmasked.toString();
+        } else if (pos > start) {
+            value = input.subSequence(start, pos).toString();
+        } else {
+            value = null; // like the unset StringVar of the parboiled rule
+        }
+        return true;
+    }
+
+    boolean EndOfAtom() {
+        if (pos >= length) {
+            return true;
+        }
+        switch (input.charAt(pos)) {
+            case ']':
+            case '}':
+            case ')':
+            case ';':
+            case ',':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isEscapedControlChar(int at) {
+        if (input.charAt(at) != '\\' || at + 1 >= length) {
+            return false;
+        }
+        switch (input.charAt(at + 1)) {
+            case ':':
+            case '(':
+            case ')':
+            case '[':
+            case ']':
+            case ';':
+            case '!':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private boolean digits(int count) {
+        if (pos + count > length) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!isDigit(input.charAt(pos + i))) {
+                return false;
+            }
+        }
+        pos += count;
+        return true;
+    }
+
+    private void skipSpaces() {
+        while (next(' ')) {
+            // consume
+        }
+    }
+
+    private boolean peek(char c) {
+        return pos < length && input.charAt(pos) == c;
+    }
+
+    private boolean next(char c) {
+        if (peek(c)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Backtracks to start, remembering how far the input was matched
+     */
+    private boolean reset(int start) {
+        furthest = Math.max(furthest, pos);
+        pos = start;
+        return false;
+    }
+
+    private static boolean isChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Same as {@link java.lang.Long#parseLong(java.lang.String)} for an
+     * optionally signed digit sequence, but without creating a substring.
+     */
+    static long parseLong(CharSequence s, int from, int to) {
+        boolean negative = s.charAt(from) == '-';
+        long limit = (negative) ? java.lang.Long.MIN_VALUE : -java.lang.Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (int i = (negative) ? from + 1 : from; i < to; i++) {
+            int digit = s.charAt(i) - '0';
+            if (result < multmin || result * 10 < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + s.subSequence(from, to) + "\"");
+            }
+            result = result * 10 - digit;
+        }
+        return (negative) ? result : -result;
+    }
+
+}
@@ -0,0 +1,22 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * Access to the values of one row by dimension, see
+ * {@link FilterEvaluator}
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface Row {
+
+    /**
+     * @param dimension
+     * @return the row's value of the dimension, null if it has none
+     */
+    Object get(String dimension);
+
+}
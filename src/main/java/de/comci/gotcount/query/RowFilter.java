@@ -0,0 +1,23 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * A filter evaluated one {@link Row} at a time, see {@link FilterEvaluator}
+ * and {@link FilterCompiler}
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface RowFilter {
+
+    /**
+     * @param row
+     * @return true if the row matches all dimensions, a row without a value
+     * for a dimension does not match
+     */
+    boolean test(Row row);
+
+}
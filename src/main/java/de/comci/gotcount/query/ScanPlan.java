@@ -0,0 +1,293 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The keys a {@link ScanPredicate} accepts: a set of points, one interval, or
+ * the complement of either.
+ *
+ * Keys are copies of the predicate's constants; numbers are normalized as in
+ * {@link QueryParser.ListCheck}, i.e. whole numbers are Longs, and dates are
+ * copied in and out, so neither the predicate nor the plan can be changed
+ * through them. Points are
+ * sorted in key order: numbers by value, keys of the same class by their
+ * natural order, keys of different classes by class name. A store that only
+ * wants to seek can use {@link #getIntervals()}, which turns every plan into
+ * sorted disjoint intervals.
+ *
+ * Instances are immutable.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public final class ScanPlan {
+
+    public enum Type {
+
+        /**
+         * Lookups of {@link #getPoints()}
+         */
+        POINTS,
+        /**
+         * A scan of {@link #getRange()}
+         */
+        RANGE,
+        /**
+         * All keys except those of {@link #getComplemented()}
+         */
+        COMPLEMENT
+
+    }
+
+    /**
+     * Sort order of keys
+     */
+    public static final Comparator<Object> KEY_ORDER = new Comparator<Object>() {
+
+        @Override
+        public int compare(Object a, Object b) {
+            if (a instanceof Long && b instanceof Long) {
+                return Long.compare((Long) a, (Long) b);
+            }
+            if (a instanceof Number && b instanceof Number) {
+                return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+            if (a.getClass() == b.getClass() && a instanceof Comparable) {
+                return ((Comparable) a).compareTo(b);
+            }
+            return a.getClass().getName().compareTo(b.getClass().getName());
+        }
+
+    };
+
+    /**
+     * @throws IllegalArgumentException for a null key, which no lookup can
+     * find
+     */
+    static ScanPlan points(Collection<?> keys) {
+        List<Object> sorted = new ArrayList<>();
+        for (Object key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("no scan plan for a null constant");
+            }
+            sorted.add(key(key));
+        }
+        Collections.sort(sorted, KEY_ORDER);
+        for (int i = sorted.size() - 1; i > 0; i--) {
+            if (KEY_ORDER.compare(sorted.get(i - 1), sorted.get(i)) == 0) {
+                sorted.remove(i);
+            }
+        }
+        return new ScanPlan(Type.POINTS, Collections.unmodifiableList(sorted), null, null);
+    }
+
+    static ScanPlan range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        return new ScanPlan(Type.RANGE, null, new Interval(key(from), fromInclusive, key(to), toInclusive), null);
+    }
+
+    /**
+     * @return the normalized number, a copy of a date, other keys as they are
+     */
+    private static Object key(Object key) {
+        return (key instanceof Date) ? ((Date) key).clone() : QueryParser.ListCheck.normalize(key);
+    }
+
+    private final Type type;
+    private final List<Object> points;
+    private final Interval range;
+    private final ScanPlan complemented;
+
+    private ScanPlan(Type type, List<Object> points, Interval range, ScanPlan complemented) {
+        this.type = type;
+        this.points = points;
+        this.range = range;
+        this.complemented = complemented;
+    }
+
+    ScanPlan complement() {
+        if (type == Type.COMPLEMENT) {
+            return complemented;
+        }
+        return new ScanPlan(Type.COMPLEMENT, null, null, this);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the sorted, distinct keys of a {@link Type#POINTS} plan
+     * @throws IllegalStateException for other plans
+     */
+    public List<Object> getPoints() {
+        if (type != Type.POINTS) {
+            throw new IllegalStateException("not a point plan: " + this);
+        }
+        List<Object> copy = new ArrayList<>(points.size());
+        for (Object point : points) {
+            copy.add(key(point));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * @return the interval of a {@link Type#RANGE} plan
+     * @throws IllegalStateException for other plans
+     */
+    public Interval getRange() {
+        if (type != Type.RANGE) {
+            throw new IllegalStateException("not a range plan: " + this);
+        }
+        return range;
+    }
+
+    /**
+     * @return the plan whose keys are excluded by a {@link Type#COMPLEMENT}
+     * plan
+     * @throws IllegalStateException for other plans
+     */
+    public ScanPlan getComplemented() {
+        if (type != Type.COMPLEMENT) {
+            throw new IllegalStateException("not a complement plan: " + this);
+        }
+        return complemented;
+    }
+
+    /**
+     * @return the accepted keys as sorted, disjoint intervals, a point as an
+     * interval from and to itself, both inclusive
+     */
+    public List<Interval> getIntervals() {
+        List<Interval> intervals = new ArrayList<>();
+        switch (type) {
+            case POINTS:
+                for (Object point : points) {
+                    intervals.add(new Interval(point, true, point, true));
+                }
+                break;
+            case RANGE:
+                intervals.add(range);
+                break;
+            default:
+                Object from = null;
+                boolean fromInclusive = false;
+                for (Interval excluded : complemented.getIntervals()) {
+                    addGap(intervals, from, fromInclusive, excluded.from, !excluded.fromInclusive);
+                    from = excluded.to;
+                    fromInclusive = !excluded.toInclusive;
+                }
+                addGap(intervals, from, fromInclusive, null, false);
+        }
+        return Collections.unmodifiableList(intervals);
+    }
+
+    private static void addGap(List<Interval> intervals, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        if (from != null && to != null) {
+            int c = KEY_ORDER.compare(from, to);
+            if (c > 0 || (c == 0 && !(fromInclusive && toInclusive))) {
+                return;
+            }
+        }
+        intervals.add(new Interval(from, fromInclusive, to, toInclusive));
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, points, range, complemented);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ScanPlan)) {
+            return false;
+        }
+        final ScanPlan other = (ScanPlan) obj;
+        return type == other.type && Objects.equals(points, other.points)
+                && Objects.equals(range, other.range) && Objects.equals(complemented, other.complemented);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case POINTS:
+                return "Points" + points;
+            case RANGE:
+                return "Range" + range;
+            default:
+                return "Not(" + complemented + ")";
+        }
+    }
+
+    /**
+     * Keys between two bounds, a null bound is unbounded
+     */
+    public static final class Interval {
+
+        private final Object from;
+        private final boolean fromInclusive;
+        private final Object to;
+        private final boolean toInclusive;
+
+        Interval(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+            this.from = from;
+            this.fromInclusive = fromInclusive && from != null;
+            this.to = to;
+            this.toInclusive = toInclusive && to != null;
+        }
+
+        /**
+         * @return the lower bound, null if unbounded
+         */
+        public Object getFrom() {
+            return key(from);
+        }
+
+        public boolean isFromInclusive() {
+            return fromInclusive;
+        }
+
+        /**
+         * @return the upper bound, null if unbounded
+         */
+        public Object getTo() {
+            return key(to);
+        }
+
+        public boolean isToInclusive() {
+            return toInclusive;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Interval)) {
+                return false;
+            }
+            final Interval other = (Interval) obj;
+            return fromInclusive == other.fromInclusive && toInclusive == other.toInclusive
+                    && Objects.equals(from, other.from) && Objects.equals(to, other.to);
+        }
+
+        @Override
+        public String toString() {
+            return ((fromInclusive) ? "[" : "(") + ((from == null) ? "" : from) + ","
+                    + ((to == null) ? "" : to) + ((toInclusive) ? "]" : ")");
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * A {@link Predicate} describing the keys it accepts, so a store sorted by
+ * key can seek to them instead of testing every key
+ * 
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface ScanPredicate {
+    
+    ScanPlan toScanPlan();
+    
+}
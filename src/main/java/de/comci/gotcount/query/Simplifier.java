@@ -0,0 +1,122 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites parsed predicates into cheaper equivalents, applied to every
+ * {@link Filter} and {@link Bucket}:
+ * <ul>
+ * <li>duplicate list members are dropped, {@code {5,5.0}} is {@code {5}}</li>
+ * <li>a list of one member is an equality check, {@code {x}} is {@code x}
+ * and {@code !{x}} is {@code !x}, including the type check of the equality
+ * which a list does not make</li>
+ * <li>an empty list is constant false, its negation constant true</li>
+ * <li>a range with equal inclusive bounds {@code [5,5]} is {@code 5}</li>
+ * <li>a range with equal bounds not both inclusive, e.g. {@code (5,5)}, is
+ * constant false</li>
+ * </ul>
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+final class Simplifier {
+
+    private Simplifier() {
+    }
+
+    /**
+     * @param parsed predicates by dimension, may be null
+     * @return the simplified predicates, null if parsed is null
+     */
+    static Map<String, Predicate> simplify(Map<String, Predicate> parsed) {
+        if (parsed == null) {
+            return null;
+        }
+        Map<String, Predicate> simplified = new HashMap<>();
+        for (Map.Entry<String, Predicate> e : parsed.entrySet()) {
+            simplified.put(e.getKey(), simplify(e.getValue()));
+        }
+        return simplified;
+    }
+
+    static Map.Entry<String, Predicate> simplify(Map.Entry<String, Predicate> parsed) {
+        if (parsed == null) {
+            return null;
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(parsed.getKey(), simplify(parsed.getValue()));
+    }
+
+    /**
+     * @param predicate
+     * @return an equivalent predicate, the predicate itself if there is no
+     * simpler one
+     */
+    static Predicate simplify(Predicate predicate) {
+        if (predicate instanceof QueryParser.ListCheck) {
+            return simplifyList((QueryParser.ListCheck<?>) predicate);
+        }
+        if (predicate instanceof QueryParser.RangeCheck) {
+            return simplifyRange((QueryParser.RangeCheck) predicate);
+        }
+        return predicate;
+    }
+
+    private static Predicate simplifyList(QueryParser.ListCheck<?> check) {
+        List<?> members = (List<?>) check.v;
+        // the first of equal members by normalized value
+        Map<Object, Object> distinct = new LinkedHashMap<>();
+        for (Object member : members) {
+            Object key = QueryParser.ListCheck.normalize(member);
+            if (!distinct.containsKey(key)) {
+                distinct.put(key, member);
+            }
+        }
+        if (distinct.isEmpty()) {
+            return ConstantCheck.of(check.isNot);
+        }
+        if (distinct.size() == 1) {
+            return equality(distinct.values().iterator().next(), check.isNot);
+        }
+        if (distinct.size() < members.size()) {
+            return new QueryParser.ListCheck<>(new ArrayList<>(distinct.values()), check.isNot, Object.class);
+        }
+        return check;
+    }
+
+    private static Predicate simplifyRange(QueryParser.RangeCheck check) {
+        if (check.getFrom().compareTo(check.getTo()) != 0) {
+            return check;
+        }
+        if (check.isFromInclusive() && check.isToInclusive()) {
+            return equality(check.getFrom(), false);
+        }
+        return ConstantCheck.FALSE;
+    }
+
+    /**
+     * @return the check the grammar builds for the value on its own
+     */
+    private static Predicate equality(Object value, boolean isNot) {
+        if (value instanceof Date) {
+            return new QueryParser.DateCheck((Date) value, isNot);
+        }
+        if (value instanceof Number) {
+            return new QueryParser.NumberCheck((Number) value, isNot);
+        }
+        if (value instanceof String) {
+            return new QueryParser.DefaultCheck<>((String) value, isNot, String.class);
+        }
+        return new QueryParser.DefaultCheck<>(value, isNot, Object.class);
+    }
+
+}
@@ -0,0 +1,23 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+/**
+ * The dictionary of a dictionary encoded string dimension, see
+ * {@link Filter#bind(java.util.Map)}
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public interface StringDictionary {
+
+    /**
+     * @param value
+     * @return the non-negative code of the value, -1 if the dictionary does
+     * not contain it
+     */
+    int code(String value);
+
+}
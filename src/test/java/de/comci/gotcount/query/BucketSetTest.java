@@ -0,0 +1,159 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class BucketSetTest {
+
+    private static final List<String> AGES = Arrays.asList(
+            "Adults:[20,65)", "Children and Teenagers:[0,19]", "Seniors:[65,150]", "Unknown:-1");
+
+    @Test
+    public void findsRangeBuckets() {
+        BucketSet set = BucketSet.fromStrings(AGES);
+
+        assertThat(set.size()).isEqualTo(4);
+        assertThat(set.indexOf(0l)).isEqualTo(1);
+        assertThat(set.indexOf(19l)).isEqualTo(1);
+        assertThat(set.indexOf(20l)).isEqualTo(0);
+        assertThat(set.indexOf(64l)).isEqualTo(0);
+        assertThat(set.indexOf(65l)).isEqualTo(2);
+        assertThat(set.indexOf(-1l)).isEqualTo(3);
+        assertThat(set.indexOf(-2l)).isEqualTo(-1);
+        assertThat(set.indexOf(151l)).isEqualTo(-1);
+        assertThat(set.get(set.indexOf(30l)).getName()).isEqualTo("Adults");
+    }
+
+    @Test
+    public void classifiesLikeTestingEveryBucket() {
+        for (List<String> definitions : Arrays.asList(AGES,
+                Arrays.asList("a:(0,10]", "b:(10,20)", "c:20", "d:(20,30]", "e:[-5.5,0.0]"),
+                Arrays.asList("a:[0.5,1.5)", "b:[1.5,1.5]", "c:(1.5,2.5]", "d:7"),
+                Arrays.asList("a:0", "b:(0,1)", "c:[1,2)", "d:(2,4]"))) {
+            BucketSet set = BucketSet.fromStrings(definitions, ParserEngine.RECURSIVE_DESCENT);
+            for (double value = -7; value <= 160; value += 0.25) {
+                int expected = -1;
+                for (int i = 0; i < set.size(); i++) {
+                    if (((DoublePredicate) set.get(i).getPredicate()).testDouble(value)) {
+                        expected = i;
+                    }
+                }
+                assertThat(set.indexOf(value)).as(definitions + " " + value).isEqualTo(expected);
+                assertThat(set.indexOf((Object) value)).as(definitions + " " + value).isEqualTo(expected);
+                if (value == (long) value) {
+                    assertThat(set.indexOf((long) value)).as(definitions + " " + value).isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsValueAndListBuckets() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("web:{http,https}", "mail:smtp", "ports:{25,80}"));
+
+        assertThat(set.indexOf("https")).isEqualTo(0);
+        assertThat(set.indexOf("smtp")).isEqualTo(1);
+        assertThat(set.indexOf(80)).isEqualTo(2);
+        assertThat(set.indexOf(80l)).isEqualTo(2);
+        assertThat(set.indexOf("ftp")).isEqualTo(-1);
+        assertThat(set.indexOf((Object) null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void findsDateBuckets() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("old:[1970-01-01,2000-01-01)", "new:[2000-01-01,2100-01-01)"));
+        Date y2k = new Date(DateDecoder.getDefault().dateMillis("2000-01-01", 0));
+
+        assertThat(set.indexOf(y2k)).isEqualTo(1);
+        assertThat(set.indexOf(y2k.getTime() - 1)).isEqualTo(0);
+        assertThat(set.indexOf((Object) 5)).isEqualTo(-1);
+    }
+
+    @Test
+    public void findsDateValueBucketsByMillis() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("holidays:{2012-12-24,2012-12-31}", "newyear:2013-01-01"));
+        long christmas = DateDecoder.getDefault().dateMillis("2012-12-24", 0);
+        long newYear = DateDecoder.getDefault().dateMillis("2013-01-01", 0);
+
+        assertThat(set.indexOf(new Date(christmas))).isEqualTo(0);
+        assertThat(set.indexOf(christmas)).isEqualTo(0);
+        assertThat(set.indexOf(newYear)).isEqualTo(1);
+        assertThat(set.indexOf(newYear + 1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testsNegatedBucketsInOrder() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("none:0", "some:!0"));
+
+        assertThat(set.indexOf(0l)).isEqualTo(0);
+        assertThat(set.indexOf(3l)).isEqualTo(1);
+    }
+
+    @Test
+    public void incomparableValuesAreInNoBucketInOrder() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("a:!x", "b:y", "c:!{1,2}", "d:[5,6]"));
+
+        assertThat(set.indexOf((Object) 5l)).isEqualTo(2);
+        assertThat(set.indexOf((Object) "y")).isEqualTo(0);
+        assertThat(BucketSet.fromStrings(Arrays.asList("a:!x", "b:y")).indexOf(5l)).isEqualTo(-1);
+        assertThat(BucketSet.fromStrings(Arrays.asList("n:!4", "r:[1,2]")).indexOf((Object) "x")).isEqualTo(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlappingRanges() {
+        BucketSet.fromStrings(Arrays.asList("a:[0,20]", "b:[20,30]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlappingDoubleRanges() {
+        BucketSet.fromStrings(Arrays.asList("a:[0.0,2.5]", "b:[2.5,3.0]"));
+    }
+
+    @Test
+    public void findsRangesWithoutWholeNumbers() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("zero:0", "fraction:(0,1)", "one:1"));
+
+        assertThat(set.indexOf(0.5)).isEqualTo(1);
+        assertThat(((DoublePredicate) set.get(1).getPredicate()).testDouble(0.5)).isTrue();
+        assertThat(set.indexOf(0l)).isEqualTo(0);
+        assertThat(set.indexOf(1l)).isEqualTo(2);
+        assertThat(set.indexOf(1.5)).isEqualTo(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRangesOverlappingBetweenWholeNumbers() {
+        BucketSet.fromStrings(Arrays.asList("a:[0,1)", "b:(0,2]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSharedValues() {
+        BucketSet.fromStrings(Arrays.asList("a:{x,y}", "b:{y,z}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnmatchedBuckets() {
+        BucketSet.fromStrings(Arrays.asList("a:[0,20]", "0-9:[0,9]"));
+    }
+
+    @Test
+    public void acceptsTouchingExclusiveRanges() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("a:[0.0,2.5)", "b:[2.5,3.0]", "c:(3.0,4.0]"));
+
+        assertThat(set.indexOf(2.5)).isEqualTo(1);
+        assertThat(set.indexOf(3.0)).isEqualTo(1);
+        assertThat(set.indexOf(3.5)).isEqualTo(2);
+    }
+
+}
@@ -38,4 +38,12 @@ public class BucketTest {
         assertThat(p).isEqualTo(new QueryParser.RangeCheck(0l, true, 19l, true)); // explicit cast to long here
     }
     
+    @Test
+    public void shouldParseABucketWithTheRecursiveDescentEngine() {
+        Bucket instance = Bucket.fromString("Bucket\\: 1:[0,19]", ParserEngine.RECURSIVE_DESCENT);
+        assertThat(instance.getName()).isEqualTo("Bucket: 1");
+        Predicate p = instance.getPredicate();
+        assertThat(p).isEqualTo(new QueryParser.RangeCheck(0l, true, 19l, true)); // explicit cast to long here
+    }
+    
 }
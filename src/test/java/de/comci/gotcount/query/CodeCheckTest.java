@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class CodeCheckTest {
+
+    private static final List<String> COUNTRIES = Arrays.asList("de", "fr", "it", "es", "us", "uk", "nl", "pl");
+
+    /**
+     * Dictionary coding a value by its index in a list
+     */
+    private static StringDictionary dictionary(final List<String> values) {
+        return new StringDictionary() {
+
+            @Override
+            public int code(String value) {
+                return values.indexOf(value);
+            }
+
+        };
+    }
+
+    private static Filter bind(String query) {
+        Map<String, StringDictionary> dictionaries = new HashMap<>();
+        dictionaries.put("country", dictionary(COUNTRIES));
+        return Filter.fromString(query).bind(dictionaries);
+    }
+
+    @Test
+    public void bindsEqualityAndLists() {
+        Filter f = bind("country:fr;age:[18,65)");
+        assertThat(f.getPredicate("country")).isEqualTo(new CodeCheck(new int[]{1}, false));
+        assertThat(f.getPredicate("country").test(1)).isTrue();
+        assertThat(f.getPredicate("country").test(2)).isFalse();
+        assertThat(f.getPredicate("age").test(20l)).isTrue();
+
+        Predicate list = bind("country:!{us,pl,de}").getPredicate("country");
+        assertThat(list.test(0)).isFalse();
+        assertThat(list.test(4)).isFalse();
+        assertThat(list.test(1)).isTrue();
+    }
+
+    @Test
+    public void missingValuesBecomeConstant() {
+        Filter missing = bind("country:xx");
+        Filter notMissing = bind("country:!{xx,yy}");
+        CodeCheck partly = (CodeCheck) bind("country:{xx,de}").getPredicate("country");
+
+        assertThat(missing.getPredicate("country")).isSameAs(ConstantCheck.FALSE);
+        assertThat(missing.isUnsatisfiable()).isTrue();
+        assertThat(notMissing.getPredicate("country")).isSameAs(ConstantCheck.TRUE);
+        assertThat(notMissing.getConstrainedDimensions()).isEmpty();
+        assertThat(partly.isConstant()).isFalse();
+        for (int code = -1; code < COUNTRIES.size(); code++) {
+            assertThat(partly.testLong(code)).isEqualTo(code == 0);
+        }
+    }
+
+    @Test
+    public void selectsOnCodeColumns() {
+        Filter f = bind("country:{de,it,pl};age:[18,65)");
+        int rows = 100;
+        int[] country = new int[rows];
+        long[] age = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            country[i] = i % COUNTRIES.size();
+            age[i] = i;
+        }
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("country", country);
+        columns.put("age", age);
+        long[] selection = Bitmaps.allocate(rows);
+        f.select(columns, 0, rows, selection);
+
+        Filter strings = Filter.fromString("country:{de,it,pl};age:[18,65)");
+        for (int i = 0; i < rows; i++) {
+            boolean expected = strings.getPredicate("country").test(COUNTRIES.get(country[i]))
+                    && strings.getPredicate("age").test(age[i]);
+            assertThat(Bitmaps.get(selection, i)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void keepsDimensionsWithoutDictionaryOrStrings() {
+        Filter f = bind("city:berlin;country:4");
+
+        assertThat(f.getPredicate("city")).isEqualTo(Filter.fromString("city:berlin").getPredicate("city"));
+        assertThat(f.getPredicate("country")).isInstanceOf(QueryParser.NumberCheck.class);
+    }
+
+    @Test
+    public void describesCodesAsScanPlan() {
+        assertThat(bind("country:{it,de}").getScanPlans().get("country").getPoints()).containsExactly(0l, 2l);
+    }
+
+    @Test
+    public void largeCodesNeedNoBitset() {
+        int large = 2000000000;
+        CodeCheck single = new CodeCheck(new int[]{large, large, -1}, false);
+        CodeCheck sparse = new CodeCheck(new int[]{large, 3, Integer.MAX_VALUE}, true);
+
+        assertThat(single.testLong(large)).isTrue();
+        assertThat(single.testLong(large + 64l)).isFalse();
+        assertThat(single.toScanPlan().getPoints()).containsExactly((long) large);
+        assertThat(sparse.testLong(3)).isFalse();
+        assertThat(sparse.testLong(Integer.MAX_VALUE)).isFalse();
+        assertThat(sparse.testLong(4)).isTrue();
+        assertThat(sparse.testLong(Integer.MAX_VALUE + 1l)).isTrue();
+        assertThat(sparse.testLong(-3)).isTrue();
+        assertThat(sparse.toScanPlan().complement().getPoints()).containsExactly(3l, (long) large, (long) Integer.MAX_VALUE);
+        assertThat(sparse).isEqualTo(new CodeCheck(new int[]{3, large, Integer.MAX_VALUE, 3}, true));
+    }
+
+}
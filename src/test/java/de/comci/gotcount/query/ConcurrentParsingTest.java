@@ -0,0 +1,102 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Parses from many threads at once, every thread with its own values, and
+ * checks that no result contains anything of another parse.
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+@RunWith(Parameterized.class)
+public class ConcurrentParsingTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 300;
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        List<Object[]> engines = new ArrayList<>();
+        for (ParserEngine engine : ParserEngine.values()) {
+            engines.add(new Object[]{engine});
+        }
+        return engines;
+    }
+
+    private final ParserEngine engine;
+
+    public ConcurrentParsingTest(ParserEngine engine) {
+        this.engine = engine;
+    }
+
+    @Test(timeout = 60000)
+    public void parsesFromManyThreadsWithoutSharingState() throws Exception {
+        final CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() throws Exception {
+                        // all threads build their parsers and parse at the same time
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            parseAndCheck(thread, i);
+                        }
+                        return ITERATIONS;
+                    }
+
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertThat(result.get()).isEqualTo(ITERATIONS);
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private void parseAndCheck(int thread, int iteration) {
+        String own = "t" + thread + "i" + iteration;
+        long number = thread * 100000l + iteration;
+        Filter f = Filter.fromString(String.format(
+                "name%d:%s;path%d:{%s,x%s};n%d:!%d;r%d:[%d,%d]",
+                thread, own, thread, own, own, thread, number, thread, number, number + 1), engine);
+
+        assertThat(f.getDimensions()).containsOnly("name" + thread, "path" + thread, "n" + thread, "r" + thread);
+        assertThat(f.getPredicate("name" + thread).test(own)).isTrue();
+        assertThat(f.getPredicate("path" + thread).test("x" + own)).isTrue();
+        assertThat(f.getPredicate("path" + thread).test("t" + thread + "i" + (iteration + 1))).isFalse();
+        assertThat(f.getPredicate("n" + thread).test(number)).isFalse();
+        assertThat(f.getPredicate("n" + thread).test(number + 1)).isTrue();
+        assertThat(f.getPredicate("r" + thread).test(number + 1)).isTrue();
+        assertThat(f.getPredicate("r" + thread).test(number + 2)).isFalse();
+
+        Bucket b = Bucket.fromString(String.format("b%d:{%s}", thread, own), engine);
+        assertThat(b.getName()).isEqualTo("b" + thread);
+        assertThat(b.getPredicate().test(own)).isTrue();
+        assertThat(b.getPredicate()).isEqualTo(new QueryParser.DefaultCheck<>(own, false, String.class));
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class CounterTest {
+
+    private static final int ROWS = 50000;
+
+    private static final BucketSet AGES = BucketSet.fromStrings(Arrays.asList(
+            "Children and Teenagers:[0,19]", "Adults:[20,64]", "Seniors:[65,120]"));
+    private static final BucketSet DECADES = BucketSet.fromStrings(Arrays.asList(
+            "20s:[20,30)", "30s:[30,40)", "40s:[40,50)"));
+    private static final BucketSet COUNTRIES = BucketSet.fromStrings(Arrays.asList(
+            "north:{1,2}", "south:{3,4}", "west:5"));
+
+    private static ForkJoinPool pool;
+    private static Map<String, Object> columns;
+    private static List<Row> rows;
+    private static Counter counter;
+
+    @BeforeClass
+    public static void setUpClass() {
+        pool = new ForkJoinPool(4);
+        Random random = new Random(42);
+        long[] age = new long[ROWS];
+        int[] country = new int[ROWS];
+        double[] score = new double[ROWS];
+        rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            age[i] = random.nextInt(100);
+            country[i] = random.nextInt(8);
+            score[i] = random.nextDouble() * 10;
+            final Map<String, Object> values = new HashMap<>();
+            values.put("age", age[i]);
+            values.put("country", (long) country[i]);
+            values.put("score", score[i]);
+            rows.add(new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return values.get(dimension);
+                }
+
+            });
+        }
+        columns = new HashMap<>();
+        columns.put("age", age);
+        columns.put("country", country);
+        columns.put("score", score);
+        Map<String, List<BucketSet>> buckets = new HashMap<>();
+        buckets.put("age", Arrays.asList(AGES, DECADES));
+        buckets.put("country", Collections.singletonList(COUNTRIES));
+        counter = new Counter(Filter.fromString("score:[2.5,7.5);country:!0"), buckets);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    /**
+     * Testing every predicate and bucket of every row
+     */
+    private static long[] naive(String dimension, BucketSet set) {
+        Filter filter = counter.getFilter();
+        long[] counts = new long[set.size()];
+        for (Row row : rows) {
+            boolean match = true;
+            for (String d : filter.getDimensions()) {
+                match &= filter.getPredicate(d).test(row.get(d));
+            }
+            if (!match) {
+                continue;
+            }
+            for (int i = 0; i < set.size(); i++) {
+                if (set.get(i).getPredicate().test(row.get(dimension))) {
+                    counts[i]++;
+                    break;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void assertCounts(Counter.Counts counts) {
+        assertThat(counts.get("age", 0)).isEqualTo(naive("age", AGES));
+        assertThat(counts.get("age", 1)).isEqualTo(naive("age", DECADES));
+        assertThat(counts.get("country", 0)).isEqualTo(naive("country", COUNTRIES));
+        long sum = 0;
+        for (long count : counts.get("age", 0)) {
+            sum += count;
+        }
+        assertThat(counts.getMatched()).isEqualTo(sum);
+    }
+
+    @Test
+    public void rowsEqualNaiveLoop() {
+        Counter.Counts counts = counter.newCounts();
+        for (Row row : rows) {
+            counts.add(row);
+        }
+        assertCounts(counts);
+    }
+
+    @Test
+    public void columnsEqualNaiveLoop() {
+        Counter.Counts counts = counter.newCounts();
+        counts.add(columns, 0, 1000);
+        counts.add(columns, 1000, ROWS - 1000);
+        assertCounts(counts);
+    }
+
+    @Test
+    public void parallelEqualsNaiveLoop() {
+        assertCounts(counter.count(columns, ROWS, pool));
+        assertCounts(counter.count(rows.spliterator(), pool));
+    }
+
+    @Test
+    public void mergedCountsAddUp() {
+        Counter.Counts first = counter.newCounts();
+        Counter.Counts second = counter.newCounts();
+        first.add(columns, 0, 20000);
+        second.add(columns, 20000, ROWS - 20000);
+        assertCounts(first.addAll(second));
+    }
+
+    @Test
+    public void missingColumnCountsNothing() {
+        Map<String, Object> partial = new HashMap<>(columns);
+        partial.remove("age");
+        Counter.Counts counts = counter.newCounts();
+        try {
+            counts.add(partial, 0, ROWS);
+        } catch (IllegalArgumentException ex) {
+            assertThat(counts.getMatched()).isEqualTo(0);
+            return;
+        }
+        throw new AssertionError("missing column accepted");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void countsOfAnotherCounterAreRejected() {
+        Counter other = new Counter(counter.getFilter(), new HashMap<String, List<BucketSet>>());
+        counter.newCounts().addAll(other.newCounts());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void unknownBucketSet() {
+        counter.newCounts().get("age", 2);
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.TimeZone;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ * Compares the decoder against SimpleDateFormat, which parsed the literals
+ * before
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class DateDecoderTest {
+
+    private static final String[] ZONES = {"UTC", "Europe/Berlin", "America/New_York", "Australia/Lord_Howe", "Asia/Kolkata"};
+
+    private static final String[] DATES = {
+        "1970-01-01", "2013-12-31", "2012-02-29", "2013-02-29", "2013-02-30", "2013-00-00", "2013-13-01",
+        "2013-99-99", "2000-03-26", "2013-03-31", "2013-10-27", "1900-01-01", "1582-10-10", "1582-10-15",
+        "1000-06-15", "0000-01-01", "9999-12-31", "2038-01-19"
+    };
+
+    private static final String[] TIMES = {"00:00", "12:46", "23:59:59", "02:30", "19:59:00", "00:00:01"};
+
+    @Test
+    public void datesEqualSimpleDateFormat() throws ParseException {
+        for (String zone : ZONES) {
+            DateDecoder decoder = DateDecoder.of(ZoneId.of(zone));
+            for (String date : DATES) {
+                assertThat(decoder.dateMillis(date, 0)).as(zone + " " + date).isEqualTo(legacy(date, "yyyy-MM-dd", zone));
+            }
+        }
+    }
+
+    @Test
+    public void timesEqualSimpleDateFormat() throws ParseException {
+        for (String zone : ZONES) {
+            DateDecoder decoder = DateDecoder.of(ZoneId.of(zone));
+            for (String time : TIMES) {
+                String pattern = (time.length() == 5) ? "HH:mm" : "HH:mm:ss";
+                assertThat(decoder.timeMillis(time, 0, time.length())).as(zone + " " + time).isEqualTo(legacy(time, pattern, zone));
+            }
+        }
+    }
+
+    @Test
+    public void daylightSavingTransitionsEqualSimpleDateFormat() throws ParseException {
+        // gap and overlap on the day itself, reached through the time of a date
+        DateDecoder berlin = DateDecoder.of(ZoneId.of("Europe/Berlin"));
+        for (int day = 1; day <= 366; day++) {
+            String date = String.format("2013-01-%02d", day % 100);
+            assertThat(berlin.dateMillis(date, 0)).isEqualTo(legacy(date, "yyyy-MM-dd", "Europe/Berlin"));
+        }
+    }
+
+    @Test
+    public void decodesJavaTimeValues() {
+        assertThat(DateDecoder.localDate("x:2013-02-30", 2)).isEqualTo(LocalDate.of(2013, 3, 2));
+        assertThat(DateDecoder.localTime("12:46:07", 0, 8)).isEqualTo(LocalTime.of(12, 46, 7));
+        assertThat(DateDecoder.localTime("12:46", 0, 5)).isEqualTo(LocalTime.of(12, 46));
+    }
+
+    @Test
+    public void parsesInTheGivenZone() {
+        DateDecoder utc = DateDecoder.of(ZoneId.of("UTC"));
+        DateDecoder tokyo = DateDecoder.of(ZoneId.of("Asia/Tokyo"));
+        for (ParserEngine engine : ParserEngine.values()) {
+            Filter lenient = Filter.fromString("d0:2013-01-01;d1:12:00", engine, utc);
+            Filter strict = Filter.parse("d0:2013-01-01;d1:12:00", engine, ParseLimits.DEFAULT, tokyo);
+            Bucket bucket = Bucket.parse("d0:[2013-01-01,2013-01-02)", engine, ParseLimits.DEFAULT, utc);
+
+            assertThat(lenient.getPredicate("d0")).isEqualTo(new QueryParser.DateCheck(new Date(1356998400000l), false));
+            assertThat(lenient.getPredicate("d1")).isEqualTo(new QueryParser.DateCheck(new Date(12 * 3600000l), false));
+            assertThat(strict.getPredicate("d0")).isEqualTo(new QueryParser.DateCheck(new Date(1356998400000l - 9 * 3600000l), false));
+            assertThat(bucket.getPredicate().test(new Date(1356998400000l))).isTrue();
+            assertThat(Filter.fromString("d0:2013-01-01", engine).getPredicate("d0"))
+                    .isEqualTo(new QueryParser.DateCheck(new Date(DateDecoder.getDefault().dateMillis("2013-01-01", 0)), false));
+        }
+    }
+
+    private static long legacy(String input, String pattern, String zone) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone(zone));
+        return format.parse(input).getTime();
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class EncodedFilterTest {
+
+    private static final String QUERY = "s:abc;n:!4;d:2.5;t:12:46;date:2013-01-01;r:[0,19];rd:(0.5,1.5];"
+            + "rt:(2010-01-01,2013-12-31];l:{5,-3,12};ld:!{0.5,2.25};ls:{node,user,group};"
+            + "lt:{2013-01-01,2012-12-24};lm:{a,2,0.5,2012-12-24};c:(5,5);z:[0.0,1.0]";
+
+    /**
+     * Strings beyond ASCII, which the grammar does not accept: the UTF-8
+     * byte order differs from String.compareTo for supplementary characters
+     */
+    private static final List<Object> UNICODE = Arrays.<Object>asList("\u00e4pfel", "z\u00fcrich", "\ud83d\ude00", "\uffff", "apfel");
+
+    private static final List<Object> VALUES = Arrays.<Object>asList(
+            "abc", "abd", "", "node", "group", "users", "a", "apfel", "\u00e4pfel", "z\u00fcrich", "zurich",
+            "\ud83d\ude00", "\ud83d", "\uffff", "\ufffe",
+            4l, 5l, -3l, 12l, 0l, 19l, 20l, 2l, 5, 12.0, 2.5, 0.5, 1.5, 2.25, 0.75, -0.0, 0.0, 19.0,
+            date("2013-01-01"), date("2012-12-24"), date("2011-06-01"), date("2010-01-01"));
+
+    private static Date date(String date) {
+        return ((QueryParser.DateCheck) Filter.fromString("d:" + date).getPredicate("d")).v;
+    }
+
+    private static Filter filter() {
+        Map<String, Predicate> predicates = new HashMap<>();
+        Filter parsed = Filter.fromString(QUERY);
+        for (String dimension : parsed.getDimensions()) {
+            predicates.put(dimension, parsed.getPredicate(dimension));
+        }
+        predicates.put("u", new QueryParser.ListCheck<>(UNICODE, false, Object.class));
+        predicates.put("su", new QueryParser.DefaultCheck<>("\ud83d\ude00", false, String.class));
+        return new Filter(predicates);
+    }
+
+    private static EncodedFilter roundTrip(Filter filter, ByteBuffer buffer) {
+        int size = EncodedFilter.encodedSize(filter);
+        int start = buffer.position();
+        EncodedFilter.encode(filter, buffer);
+        assertThat(buffer.position() - start).isEqualTo(size);
+        buffer.position(start);
+        EncodedFilter encoded = EncodedFilter.wrap(buffer);
+        assertThat(encoded.getEncodedSize()).isEqualTo(size);
+        return encoded;
+    }
+
+    @Test
+    public void decodesEqualPredicates() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            Filter filter = Filter.fromString(QUERY, engine);
+            Filter decoded = roundTrip(filter, ByteBuffer.allocate(4096)).toFilter();
+
+            assertThat(decoded.getDimensions()).isEqualTo(filter.getDimensions());
+            for (String dimension : filter.getDimensions()) {
+                assertThat(decoded.getPredicate(dimension)).as(dimension).isEqualTo(filter.getPredicate(dimension));
+            }
+        }
+    }
+
+    @Test
+    public void evaluatesInPlace() {
+        Filter filter = filter();
+        EncodedFilter encoded = roundTrip(filter, ByteBuffer.allocateDirect(4096));
+        assertThat(encoded.toFilter().getPredicate("u")).isEqualTo(filter.getPredicate("u"));
+
+        for (int i = 0; i < encoded.getDimensionCount(); i++) {
+            String dimension = encoded.getDimension(i);
+            Predicate predicate = filter.getPredicate(dimension);
+            for (Object value : VALUES) {
+                Boolean expected = expected(predicate, value);
+                // a value the predicate rejects matches neither it nor its negation
+                assertThat(encoded.test(i, value)).as(dimension + " " + value).isEqualTo(expected != null && expected);
+            }
+        }
+    }
+
+    /**
+     * @return the result of the predicate, null if it rejects the type
+     */
+    private static Boolean expected(Predicate predicate, Object value) {
+        try {
+            return predicate.test(value);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    @Test
+    public void evaluatesRows() {
+        EncodedFilter encoded = roundTrip(Filter.fromString("age:[18,65);country:{de,fr}"), ByteBuffer.allocate(256));
+        final Map<String, Object> values = new HashMap<>();
+        Row row = new Row() {
+
+            @Override
+            public Object get(String dimension) {
+                return values.get(dimension);
+            }
+
+        };
+
+        values.put("age", 30l);
+        assertThat(encoded.test(row)).isFalse(); // no country
+        values.put("country", "fr");
+        assertThat(encoded.test(row)).isTrue();
+        values.put("age", 65l);
+        assertThat(encoded.test(row)).isFalse();
+    }
+
+    @Test
+    public void wrapsConsecutiveFiltersAndBuckets() {
+        Filter first = Filter.fromString("d0:a");
+        Filter second = Filter.fromString("d1:{1,2};d2:x");
+        Bucket bucket = Bucket.fromString("Adults:[20,99]");
+        ByteBuffer buffer = ByteBuffer.allocate(EncodedFilter.encodedSize(first) + EncodedFilter.encodedSize(second)
+                + EncodedFilter.encodedSize(bucket));
+        EncodedFilter.encode(first, buffer);
+        EncodedFilter.encode(second, buffer);
+        EncodedFilter.encode(bucket, buffer);
+        buffer.flip();
+
+        assertThat(EncodedFilter.wrap(buffer).getDimension(0)).isEqualTo("d0");
+        assertThat(EncodedFilter.wrap(buffer).toFilter().getPredicate("d1")).isEqualTo(second.getPredicate("d1"));
+        Bucket decoded = EncodedFilter.wrap(buffer).toBucket();
+        assertThat(decoded.getName()).isEqualTo("Adults");
+        assertThat(decoded.getPredicate()).isEqualTo(bucket.getPredicate());
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void isSmallerThanTheObjectGraph() {
+        StringBuilder list = new StringBuilder("d:{");
+        for (int i = 0; i < 1000; i++) {
+            list.append((i > 0) ? "," : "").append(i * 7);
+        }
+        Filter filter = Filter.fromString(list.append('}').toString());
+
+        // 8 bytes per member against a boxed Long and a list node each
+        assertThat(EncodedFilter.encodedSize(filter)).isLessThan(8 * 1000 + 32);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBoundFilters() {
+        Map<String, StringDictionary> dictionaries = Collections.<String, StringDictionary>singletonMap("d", new StringDictionary() {
+
+            @Override
+            public int code(String value) {
+                return value.length();
+            }
+
+        });
+        EncodedFilter.encodedSize(Filter.fromString("d:{a,bb}").bind(dictionaries));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherBytes() {
+        EncodedFilter.wrap(ByteBuffer.wrap(new byte[]{42, 0, 0}));
+    }
+
+}
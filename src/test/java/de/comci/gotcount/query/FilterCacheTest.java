@@ -0,0 +1,142 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class FilterCacheTest {
+
+    /**
+     * Cache with a clock moved by the test
+     */
+    private static class ManualClockCache extends FilterCache {
+
+        long time;
+
+        ManualClockCache(int maximumSize, long timeToLive, TimeUnit unit) {
+            super(maximumSize, timeToLive, unit);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+
+    }
+
+    @Test
+    public void shouldReturnTheSameFilterForTheSameQuery() {
+        FilterCache cache = new FilterCache(10);
+        Filter first = cache.getFilter("d0:abc;d1:!4");
+        Filter second = cache.getFilter("d0:abc;d1:!4");
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getPredicate("d0").test("abc")).isTrue();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheFiltersAndBucketsSeparately() {
+        FilterCache cache = new FilterCache(10);
+        Filter filter = cache.getFilter("age:[0,19]");
+        Bucket bucket = cache.getBucket("age:[0,19]");
+
+        assertThat(filter.getDimensions()).containsOnly("age");
+        assertThat(bucket.getName()).isEqualTo("age");
+        assertThat(cache.getBucket("age:[0,19]")).isSameAs(bucket);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedEntry() {
+        FilterCache cache = new FilterCache(2);
+        Filter a = cache.getFilter("d:a");
+        cache.getFilter("d:b");
+        cache.getFilter("d:a"); // a is now more recently used than b
+        cache.getFilter("d:c");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getFilter("d:a")).isSameAs(a);
+        cache.getFilter("d:b");
+        assertThat(cache.getMissCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldEvictExpiredEntries() {
+        ManualClockCache cache = new ManualClockCache(10, 1, TimeUnit.SECONDS);
+        Filter first = cache.getFilter("d:a");
+        cache.time = TimeUnit.MILLISECONDS.toNanos(999);
+        assertThat(cache.getFilter("d:a")).isSameAs(first);
+        cache.time = TimeUnit.SECONDS.toNanos(1);
+        assertThat(cache.getFilter("d:a")).isNotSameAs(first);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldExpireEntriesInInsertionOrder() {
+        ManualClockCache cache = new ManualClockCache(10, 1, TimeUnit.SECONDS);
+        cache.getFilter("d:a");
+        cache.time = TimeUnit.MILLISECONDS.toNanos(500);
+        Filter b = cache.getFilter("d:b");
+        cache.getFilter("d:a"); // access order differs from insertion order
+        cache.time = TimeUnit.MILLISECONDS.toNanos(1200);
+        cache.getFilter("d:c");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getFilter("d:b")).isSameAs(b);
+    }
+
+    @Test
+    public void evictedBySizeIsNotExpiredAgain() {
+        ManualClockCache cache = new ManualClockCache(1, 1, TimeUnit.SECONDS);
+        cache.getFilter("d:a");
+        cache.getFilter("d:b");
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+        cache.time = TimeUnit.SECONDS.toNanos(2);
+        cache.getFilter("d:c");
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void filterDimensionsAreUnmodifiable() {
+        Filter f = new FilterCache(10).getFilter("d0:abc");
+        f.getDimensions().clear();
+    }
+
+    @Test
+    public void predicatesDoNotShareMutableConstants() {
+        Date date = new Date(0);
+        QueryParser.DefaultCheck<Date> check = new QueryParser.DefaultCheck<>(date, false, Date.class);
+        date.setTime(1000);
+        assertThat(check.test(new Date(0))).isTrue();
+
+        List<Object> list = new LinkedList<Object>(Arrays.asList("a", "b"));
+        QueryParser.ListCheck<Object> listCheck = new QueryParser.ListCheck<Object>(list, false, Object.class);
+        list.add("c");
+        assertThat(listCheck.test("c")).isFalse();
+        assertThat(listCheck).isEqualTo(new QueryParser.ListCheck<Object>(Arrays.asList("a", "b"), false, Object.class));
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class FilterCompilerTest {
+
+    private static final String[] QUERIES = {
+        "name:abc;n:4;age:[18,65);path:{user,node};ids:{3,5,7}",
+        "name:!abc;n:!4;ids:!{3,5,7};path:!{user,node}",
+        "age:(18,65];score:(0.5,1.0];when:[2010-01-01,2013-12-31)",
+        "day:2012-12-24;time:!12:00;ratio:2.5;big:{1,2,3,4,5,6,7,8,9,10}",
+        ""
+    };
+
+    /**
+     * Row backed by a map
+     */
+    private static class MapRow implements Row {
+
+        final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Object get(String dimension) {
+            return values.get(dimension);
+        }
+
+    }
+
+    @Test
+    public void matchesLikeTheEvaluator() {
+        Random random = new Random(42);
+        FilterCompiler compiler = new FilterCompiler(10);
+        for (String query : QUERIES) {
+            RowFilter compiled = compiler.compile(query);
+            FilterEvaluator evaluator = Filter.fromString(query).compile();
+            assertThat(compiled).isNotInstanceOf(FilterEvaluator.class);
+            for (int i = 0; i < 5000; i++) {
+                MapRow row = randomRow(random);
+                assertThat(compiled.test(row)).as(query + " " + row.values).isEqualTo(evaluator.test(row));
+            }
+        }
+    }
+
+    @Test
+    public void testsOtherTypesWithTheParsedPredicate() {
+        RowFilter compiled = new FilterCompiler(10).compile("ids:{3,5,7};age:[18,65]");
+        MapRow row = new MapRow();
+        row.values.put("ids", 5);
+        row.values.put("age", 20);
+        try {
+            compiled.test(row);
+            throw new AssertionError("expected the range to reject an Integer");
+        } catch (RuntimeException ex) {
+            assertThat(ex.getMessage()).contains("types not compatible");
+        }
+        row.values.put("age", 20l);
+        assertThat(compiled.test(row)).isTrue();
+    }
+
+    @Test
+    public void cachesByQuery() {
+        FilterCompiler compiler = new FilterCompiler(2);
+        RowFilter first = compiler.compile("d:a");
+        assertThat(compiler.compile("d:a")).isSameAs(first);
+        compiler.compile("d:b");
+        compiler.compile("d:c");
+        assertThat(compiler.size()).isEqualTo(2);
+        assertThat(compiler.compile("d:a")).isNotSameAs(first);
+    }
+
+    @Test
+    public void fallsBackToTheEvaluator() {
+        FilterCompiler compiler = new FilterCompiler(10) {
+
+            @Override
+            Class<?> define(String name, byte[] code) {
+                throw new LinkageError("no class generation");
+            }
+
+        };
+        RowFilter filter = compiler.compile("d:a");
+        MapRow row = new MapRow();
+        row.values.put("d", "a");
+
+        assertThat(filter).isInstanceOf(FilterEvaluator.class);
+        assertThat(filter.test(row)).isTrue();
+    }
+
+    private static MapRow randomRow(Random random) {
+        String[] names = {"abc", "abd", "user", "node", "group"};
+        MapRow row = new MapRow();
+        put(row, random, "name", names[random.nextInt(names.length)]);
+        put(row, random, "path", names[random.nextInt(names.length)]);
+        put(row, random, "n", (long) random.nextInt(8));
+        put(row, random, "ids", (long) random.nextInt(10));
+        put(row, random, "big", (long) random.nextInt(12));
+        put(row, random, "age", (long) random.nextInt(90));
+        put(row, random, "score", random.nextInt(12) / 10.0);
+        put(row, random, "ratio", random.nextInt(6) / 2.0);
+        put(row, random, "when", new Date(DateDecoder.getDefault().dateMillis("2009-06-01", 0) + random.nextInt(6) * 365 * 86400000l));
+        put(row, random, "day", new Date(DateDecoder.getDefault().dateMillis("2012-12-23", 0) + random.nextInt(3) * 86400000l));
+        put(row, random, "time", new Date(DateDecoder.getDefault().timeMillis("11:59", 0, 5) + random.nextInt(3) * 60000l));
+        return row;
+    }
+
+    private static void put(MapRow row, Random random, String dimension, Object value) {
+        // some rows miss a dimension
+        if (random.nextInt(20) > 0) {
+            row.values.put(dimension, value);
+        }
+    }
+
+}
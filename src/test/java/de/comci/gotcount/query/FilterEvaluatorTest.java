@@ -0,0 +1,93 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.HashMap;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class FilterEvaluatorTest {
+
+    /**
+     * Row counting the values read per dimension
+     */
+    private static class CountingRow implements Row {
+
+        final Map<String, Object> values = new HashMap<>();
+        final Map<String, Integer> reads = new HashMap<>();
+
+        CountingRow with(String dimension, Object value) {
+            values.put(dimension, value);
+            return this;
+        }
+
+        @Override
+        public Object get(String dimension) {
+            Integer n = reads.get(dimension);
+            reads.put(dimension, (n == null) ? 1 : n + 1);
+            return values.get(dimension);
+        }
+
+        int reads(String dimension) {
+            Integer n = reads.get(dimension);
+            return (n == null) ? 0 : n;
+        }
+
+    }
+
+    @Test
+    public void matchesLikeThePredicates() {
+        FilterEvaluator evaluator = Filter.fromString("name:abc;age:[18,65);id:!{3,5,7}").compile();
+
+        assertThat(evaluator.test(new CountingRow().with("name", "abc").with("age", 20l).with("id", 4l))).isTrue();
+        assertThat(evaluator.test(new CountingRow().with("name", "abc").with("age", 20l).with("id", 5l))).isFalse();
+        assertThat(evaluator.test(new CountingRow().with("name", "abd").with("age", 20l).with("id", 4l))).isFalse();
+        assertThat(evaluator.test(new CountingRow().with("name", "abc").with("id", 4l))).isFalse();
+    }
+
+    @Test
+    public void ordersByCostFirst() {
+        FilterEvaluator evaluator = Filter.fromString("list:{1,2,3,4,5,6,7,8};age:[18,65);name:abc").compile();
+
+        assertThat(evaluator.getOrder()).containsExactly("name", "age", "list");
+    }
+
+    @Test
+    public void stopsAtTheFirstFailingCheck() {
+        FilterEvaluator evaluator = Filter.fromString("list:{1,2,3,4,5,6,7,8};name:abc").compile();
+        CountingRow row = new CountingRow().with("name", "xyz").with("list", 1l);
+
+        assertThat(evaluator.test(row)).isFalse();
+        assertThat(row.reads("name")).isEqualTo(1);
+        assertThat(row.reads("list")).isEqualTo(0);
+    }
+
+    @Test
+    public void reordersBySelectivity() {
+        // the cheap check never rejects, the list rejects every row
+        FilterEvaluator evaluator = Filter.fromString("list:{1,2,3};name:abc").compile();
+        CountingRow row = new CountingRow().with("name", "abc").with("list", 9l);
+        for (int i = 0; i < FilterEvaluator.REPLAN_INTERVAL; i++) {
+            assertThat(evaluator.test(row)).isFalse();
+        }
+
+        assertThat(evaluator.getOrder()).containsExactly("list", "name");
+        row.reads.clear();
+        evaluator.test(row);
+        assertThat(row.reads("name")).isEqualTo(0);
+    }
+
+    @Test
+    public void emptyFilterMatchesAllRows() {
+        assertThat(Filter.fromString("").compile().test(new CountingRow())).isTrue();
+    }
+
+}
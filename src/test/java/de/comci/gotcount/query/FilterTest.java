@@ -6,6 +6,8 @@
 package de.comci.gotcount.query;
 
 
+import java.util.HashMap;
+import java.util.Map;
 import static org.fest.assertions.api.Assertions.assertThat;
 import org.junit.Test;
 
@@ -62,4 +64,78 @@ public class FilterTest {
         assertThat(f.getPredicate("path").test("")).isFalse();
     }
 
+    @Test
+    public void testFromStringWithRecursiveDescentEngine() {
+        Filter f = Filter.fromString("d0:abc;d1:!4;path:{node,user}", ParserEngine.RECURSIVE_DESCENT);
+        assertThat(f.getDimensions()).containsOnly("d0", "d1", "path");
+        assertThat(f.getPredicate("d0")).isEqualTo(Filter.fromString("d0:abc").getPredicate("d0"));
+        assertThat(f.getPredicate("d1")).isEqualTo(Filter.fromString("d1:!4").getPredicate("d1"));
+        assertThat(f.getPredicate("path")).isEqualTo(Filter.fromString("path:{node,user}").getPredicate("path"));
+    }
+
+    @Test
+    public void testFromEmptyStringWithRecursiveDescentEngine() {
+        Filter f = Filter.fromString("", ParserEngine.RECURSIVE_DESCENT);
+        assertThat(f.getDimensions()).isEmpty();
+    }
+
+    @Test
+    public void testRepeatedParsesDoNotShareState() {
+        Filter first = Filter.fromString("d0:a;path:{node,user}");
+        Filter second = Filter.fromString("d1:b;path:{group}");
+        assertThat(first.getDimensions()).containsOnly("d0", "path");
+        assertThat(second.getDimensions()).containsOnly("d1", "path");
+        assertThat(second.getPredicate("path").test("group")).isTrue();
+        assertThat(second.getPredicate("path").test("node")).isFalse();
+    }
+
+    @Test
+    public void testListsOfOneQueryDoNotShareState() {
+        Filter f = Filter.fromString("d0:{a,b};d1:{c}");
+        assertThat(f.getPredicate("d0").test("c")).isFalse();
+        assertThat(f.getPredicate("d1").test("a")).isFalse();
+        assertThat(f.getPredicate("d1").test("c")).isTrue();
+    }
+
+    @Test
+    public void testSelect() {
+        Filter f = Filter.fromString("age:[18,65);id:!{3,5,7};score:(0.5,1.0]");
+        int rows = 130;
+        long[] age = new long[rows];
+        int[] id = new int[rows];
+        double[] score = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            age[i] = i;
+            id[i] = i % 10;
+            score[i] = (i % 4) * 0.5;
+        }
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("age", age);
+        columns.put("id", id);
+        columns.put("score", score);
+
+        long[] selection = Bitmaps.allocate(rows - 10);
+        f.select(columns, 10, rows - 10, selection);
+
+        int expected = 0;
+        for (int i = 10; i < rows; i++) {
+            boolean match = age[i] >= 18 && age[i] < 65 && id[i] != 3 && id[i] != 5 && id[i] != 7 && score[i] > 0.5 && score[i] <= 1.0;
+            assertThat(Bitmaps.get(selection, i - 10)).isEqualTo(match);
+            expected += (match) ? 1 : 0;
+        }
+        assertThat(Bitmaps.cardinality(selection)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testSelectWithoutDimensions() {
+        long[] selection = Bitmaps.allocate(70);
+        Filter.fromString("").select(new HashMap<String, Object>(), 0, 70, selection);
+        assertThat(Bitmaps.cardinality(selection)).isEqualTo(70);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectWithMissingColumn() {
+        Filter.fromString("d0:4").select(new HashMap<String, Object>(), 0, 10, Bitmaps.allocate(10));
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class IncrementalParserTest {
+
+    private static String query(int dimensions, String last) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < dimensions; i++) {
+            query.append("d").append(i).append(":{a,b").append(i).append("};");
+        }
+        return query.append("last:").append(last).toString();
+    }
+
+    private static void assertSameFilter(Filter actual, Filter expected) {
+        assertThat(actual.getDimensions()).isEqualTo(expected.getDimensions());
+        for (String dimension : expected.getDimensions()) {
+            assertThat(actual.getPredicate(dimension)).isEqualTo(expected.getPredicate(dimension));
+        }
+    }
+
+    @Test
+    public void equalsFromString() {
+        String[] queries = {
+            "", "d0:abc", "d0:abc;d1:!4;d2:[0,19]", "d0:abc;d0:xyz", "d0:abc;;d1:x",
+            "d0:[0,19;d1:abc", "d0:abc;d1:[0,19;d2:x", "d0:a)b;d1:x", "d0:abc;",
+            "d\\;0:a\\;b;d1:{x\\;y,z}", "d0:a\\;", "d0:{a,a};d1:[5,5]"
+        };
+        for (ParserEngine engine : ParserEngine.values()) {
+            IncrementalParser parser = new IncrementalParser(engine);
+            for (String query : queries) {
+                assertSameFilter(parser.parse(query), Filter.fromString(query, engine));
+                // again, now from the kept segments
+                assertSameFilter(parser.parse(query), Filter.fromString(query, engine));
+            }
+        }
+    }
+
+    @Test
+    public void onlyChangedSegmentsAreParsed() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            IncrementalParser parser = new IncrementalParser(engine);
+            Filter before = parser.parse(query(200, "x"));
+            assertThat(parser.getReparsedSegments()).isEqualTo(201);
+
+            Filter after = parser.parse(query(200, "y"));
+            assertThat(parser.getReparsedSegments()).isEqualTo(1);
+            assertThat(after.getDimensions()).hasSize(201);
+            for (int i = 0; i < 200; i++) {
+                assertThat(after.getPredicate("d" + i)).isSameAs(before.getPredicate("d" + i));
+            }
+            assertThat(after.getPredicate("last").test("y")).isTrue();
+        }
+    }
+
+    @Test
+    public void segmentsAfterABrokenOneAreKept() {
+        IncrementalParser parser = new IncrementalParser();
+        parser.parse("d0:abc;d1:x;d2:y");
+        // d1 is being edited, d2 is not part of the result
+        assertThat(parser.parse("d0:abc;d1:[1,;d2:y").getDimensions()).isEqualTo(Filter.fromString("d0:abc;d1:[1,;d2:y").getDimensions());
+        assertThat(parser.getReparsedSegments()).isEqualTo(1);
+
+        Filter f = parser.parse("d0:abc;d1:[1,5];d2:y");
+        assertThat(parser.getReparsedSegments()).isEqualTo(1);
+        assertThat(f.getDimensions()).containsOnly("d0", "d1", "d2");
+    }
+
+    @Test
+    public void eachNewSegmentIsParsedOnceAndTimed() {
+        QueryMetrics metrics = new QueryMetrics();
+        Metrics.setSink(metrics);
+        try {
+            for (ParserEngine engine : ParserEngine.values()) {
+                metrics.reset();
+                IncrementalParser parser = new IncrementalParser(engine);
+                parser.parse("d0:abc;d1:[1,;d2:y");
+                parser.parse("d0:abc;d1:[1,5];d2:y");
+
+                assertThat(metrics.getFilterParses()).isEqualTo(4);
+                assertThat(metrics.getFilterParseFailures()).isEqualTo(1);
+            }
+        } finally {
+            Metrics.setSink(null);
+        }
+    }
+
+    @Test
+    public void enforcesLimits() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            IncrementalParser parser = new IncrementalParser(engine, new ParseLimits(30, 2, 3), DateDecoder.getDefault());
+            assertThat(parser.parse("d0:{a,b,c};d1:x").getDimensions()).containsOnly("d0", "d1");
+            assertLimitExceeded(parser, "d0:{a,b,c,d}");
+            assertLimitExceeded(parser, "d0:a;d1:b;d2:c");
+            assertLimitExceeded(parser, "d0:abcdefghijklmnopqrstuvwxyz0123");
+        }
+    }
+
+    @Test
+    public void rejectsWhatFromStringParsesBeyondTheLimits() {
+        StringBuilder list = new StringBuilder("d0:{0");
+        for (int i = 1; i <= ParseLimits.DEFAULT.getMaxListSize(); i++) {
+            list.append(',').append(i);
+        }
+        String query = list.append('}').toString();
+
+        assertThat(Filter.fromString(query).getDimensions()).containsOnly("d0");
+        assertLimitExceeded(new IncrementalParser(), query);
+    }
+
+    private static void assertLimitExceeded(IncrementalParser parser, String query) {
+        try {
+            parser.parse(query);
+            fail(query + " accepted");
+        } catch (QueryParseException ex) {
+            assertThat(ex.getPosition()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void splitsAtUnescapedSemicolonsOnly() {
+        assertThat(IncrementalParser.split("a:b\\;c;d:{e\\;f,g};h:i\\:j")).isEqualTo(Arrays.asList("a:b\\;c", "d:{e\\;f,g}", "h:i\\:j"));
+        assertThat(IncrementalParser.split("a:b;")).isEqualTo(Arrays.asList("a:b", ""));
+        assertThat(IncrementalParser.split("a:b\\")).isEqualTo(Arrays.asList("a:b\\"));
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class MultiFilterEvaluatorTest {
+
+    private static Row row(final Map<String, Object> values) {
+        return new Row() {
+
+            @Override
+            public Object get(String dimension) {
+                return values.get(dimension);
+            }
+
+        };
+    }
+
+    @Test
+    public void equalPairsAreTestedOnce() {
+        MultiFilterEvaluator evaluator = new MultiFilterEvaluator(Arrays.asList(
+                Filter.fromString("country:DE;status:!deleted"),
+                Filter.fromString("status:!deleted;country:DE;age:[18,65)"),
+                Filter.fromString("country:{FR,IT};age:[18,65)"),
+                Filter.fromString("tags:{a,b};age:[18,65)"),
+                Filter.fromString("tags:{a,b}"),
+                Filter.fromString("tags:{b,a}")));
+
+        // lists are equal in the same order only
+        assertThat(evaluator.size()).isEqualTo(6);
+        assertThat(evaluator.getDistinctPredicates()).isEqualTo(6);
+    }
+
+    @Test
+    public void matchesEqualEachFilterOnItsOwn() {
+        String[] conditions = {"country:DE", "country:{FR,IT}", "country:!DE", "status:!deleted", "status:open",
+            "age:[18,65)", "age:(30,40]", "age:{20,25,30}", "age:(5,5)", "score:[0.5,1.0]"};
+        Random random = new Random(42);
+        List<Filter> filters = new ArrayList<>();
+        filters.add(Filter.fromString(""));
+        for (int i = 0; i < 130; i++) {
+            StringBuilder query = new StringBuilder();
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                query.append((query.length() > 0) ? ";" : "").append(conditions[random.nextInt(conditions.length)]);
+            }
+            filters.add(Filter.fromString(query.toString()));
+        }
+        MultiFilterEvaluator evaluator = new MultiFilterEvaluator(filters);
+        assertThat(evaluator.getDistinctPredicates()).isLessThanOrEqualTo(conditions.length);
+
+        String[] countries = {"DE", "FR", "IT", "US"};
+        String[] states = {"open", "deleted", "closed"};
+        long[] matches = Bitmaps.allocate(filters.size());
+        for (int r = 0; r < 1000; r++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("country", countries[random.nextInt(countries.length)]);
+            values.put("age", (long) random.nextInt(90));
+            if (random.nextBoolean()) {
+                values.put("status", states[random.nextInt(states.length)]);
+            }
+            values.put("score", random.nextDouble());
+            Row row = row(values);
+            evaluator.test(row, matches);
+            assertThat(evaluator.test(row)).isEqualTo(matches);
+            for (int i = 0; i < filters.size(); i++) {
+                assertThat(Bitmaps.get(matches, i)).isEqualTo(filters.get(i).compile().test(row));
+            }
+        }
+    }
+
+    @Test
+    public void pairsSpanningManyWords() {
+        List<Filter> filters = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            filters.add(Filter.fromString((i % 3 == 0) ? "country:DE;age:[18,65)" : (i % 3 == 1) ? "country:!DE" : "age:[18,65)"));
+        }
+        MultiFilterEvaluator evaluator = new MultiFilterEvaluator(filters);
+        Map<String, Object> values = new HashMap<>();
+        values.put("country", "FR");
+        values.put("age", 30l);
+
+        long[] matches = evaluator.test(row(values));
+        assertThat(Bitmaps.cardinality(matches)).isEqualTo(200);
+        for (int i = 0; i < filters.size(); i++) {
+            assertThat(Bitmaps.get(matches, i)).isEqualTo(i % 3 != 0);
+        }
+    }
+
+    @Test
+    public void noFilters() {
+        MultiFilterEvaluator evaluator = new MultiFilterEvaluator(new ArrayList<Filter>());
+        assertThat(evaluator.test(row(new HashMap<String, Object>()))).isEmpty();
+    }
+
+}
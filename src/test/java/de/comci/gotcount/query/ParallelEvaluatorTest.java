@@ -0,0 +1,126 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class ParallelEvaluatorTest {
+
+    private static final int ROWS = 10007;
+
+    private static ForkJoinPool pool;
+    private static Map<String, Object> columns;
+    private static List<Row> rows;
+
+    @BeforeClass
+    public static void setUpClass() {
+        pool = new ForkJoinPool(4);
+        Random random = new Random(42);
+        long[] age = new long[ROWS];
+        int[] country = new int[ROWS];
+        rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            age[i] = random.nextInt(90);
+            country[i] = random.nextInt(8);
+            final Map<String, Object> values = new HashMap<>();
+            values.put("age", age[i]);
+            values.put("country", (long) country[i]);
+            rows.add(new Row() {
+
+                @Override
+                public Object get(String dimension) {
+                    return values.get(dimension);
+                }
+
+            });
+        }
+        columns = new HashMap<>();
+        columns.put("age", age);
+        columns.put("country", country);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    private static int[] sequential(Filter filter, int length) {
+        long[] selection = Bitmaps.allocate(length);
+        filter.select(columns, 0, length, selection);
+        int[] ids = new int[Bitmaps.cardinality(selection)];
+        for (int i = 0, n = 0; i < length; i++) {
+            if (Bitmaps.get(selection, i)) {
+                ids[n++] = i;
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    public void columnsEqualSequentialSelect() {
+        Filter filter = Filter.fromString("age:[18,65);country:{1,3,5}");
+        int[] expected = sequential(filter, ROWS);
+        for (int blockSize : new int[]{1, 64, 100, 1000, ParallelEvaluator.DEFAULT_BLOCK_SIZE}) {
+            ParallelEvaluator evaluator = new ParallelEvaluator(filter, pool, blockSize);
+            assertThat(evaluator.count(columns, ROWS)).isEqualTo(expected.length);
+            assertThat(evaluator.select(columns, ROWS)).isEqualTo(expected);
+        }
+        assertThat(new ParallelEvaluator(filter, pool, 64).select(columns, 1000)).isEqualTo(sequential(filter, 1000));
+    }
+
+    @Test
+    public void rowsEqualSequentialEvaluation() {
+        Filter filter = Filter.fromString("age:[18,65);country:{1,3,5}");
+        int[] expected = sequential(filter, ROWS);
+        long[] ids = new long[expected.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = expected[i];
+        }
+        for (int blockSize : new int[]{1, 64, 1000, ParallelEvaluator.DEFAULT_BLOCK_SIZE}) {
+            ParallelEvaluator evaluator = new ParallelEvaluator(filter, pool, blockSize);
+            assertThat(evaluator.count(rows.spliterator())).isEqualTo(expected.length);
+            assertThat(evaluator.select(rows.spliterator())).isEqualTo(ids);
+            assertThat(evaluator.count(Spliterators.spliteratorUnknownSize(rows.iterator(), 0))).isEqualTo(expected.length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rowIdsNeedSubsizedSpliterator() {
+        new ParallelEvaluator(Filter.fromString("age:5"), pool, 64).select(Spliterators.spliteratorUnknownSize(rows.iterator(), 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingColumnFailsOnCallingThread() {
+        new ParallelEvaluator(Filter.fromString("size:5"), pool, 64).count(columns, ROWS);
+    }
+
+    @Test
+    public void emptyAndUnsatisfiableFilters() {
+        ParallelEvaluator all = new ParallelEvaluator(Filter.fromString(""), pool, 64);
+        assertThat(all.count(columns, ROWS)).isEqualTo(ROWS);
+        assertThat(all.count(rows.spliterator())).isEqualTo(ROWS);
+
+        ParallelEvaluator none = new ParallelEvaluator(Filter.fromString("age:(5,5)"), pool, 64);
+        assertThat(none.count(columns, ROWS)).isEqualTo(0);
+        assertThat(none.select(rows.spliterator())).isEmpty();
+        assertThat(none.select(columns, 0)).isEmpty();
+    }
+
+}
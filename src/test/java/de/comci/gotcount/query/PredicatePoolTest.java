@@ -0,0 +1,82 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.concurrent.TimeUnit;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class PredicatePoolTest {
+
+    @Test
+    public void equalPredicatesAreShared() {
+        PredicatePool pool = new PredicatePool();
+        Filter a = pool.intern(Filter.fromString("country:DE;status:!deleted;age:[18,65)"));
+        Filter b = pool.intern(Filter.fromString("status:!deleted;country:DE;score:{1,2,3}"));
+        Filter c = pool.intern(Filter.fromString("country:{FR,IT};score:{1,2,3}"));
+
+        assertThat(b.getPredicate("country")).isSameAs(a.getPredicate("country"));
+        assertThat(b.getPredicate("status")).isSameAs(a.getPredicate("status"));
+        assertThat(c.getPredicate("score")).isSameAs(b.getPredicate("score"));
+        assertThat(c.getPredicate("country")).isNotSameAs(a.getPredicate("country"));
+        assertThat(pool.intern(Filter.fromString("score:{3,2,1}")).getPredicate("score")).isNotSameAs(b.getPredicate("score"));
+        assertThat(b.getDimensions().iterator().next()).isSameAs(pool.intern(new String(b.getDimensions().iterator().next())));
+        assertThat(a.getPredicate("age").test(18l)).isTrue();
+    }
+
+    @Test
+    public void differentPredicatesAreNotShared() {
+        PredicatePool pool = new PredicatePool();
+        Predicate number = pool.intern(Filter.fromString("d:5").getPredicate("d"));
+        Predicate fraction = pool.intern(Filter.fromString("d:5.5").getPredicate("d"));
+        Predicate negated = pool.intern(Filter.fromString("d:!5").getPredicate("d"));
+
+        assertThat(fraction).isNotSameAs(number);
+        assertThat(negated).isNotSameAs(number);
+        assertThat(negated.test(5l)).isFalse();
+    }
+
+    @Test
+    public void bucketsAreInterned() {
+        PredicatePool pool = new PredicatePool();
+        Bucket a = pool.intern(Bucket.fromString("adults:[18,65)"));
+        Bucket b = pool.intern(Bucket.fromString("adults:[18,65)"));
+
+        assertThat(b.getPredicate()).isSameAs(a.getPredicate());
+        assertThat(b.getName()).isSameAs(a.getName());
+    }
+
+    @Test
+    public void unusedInstancesAreDropped() throws InterruptedException {
+        PredicatePool pool = new PredicatePool();
+        // not parsed, the parser of the thread may still refer to its result
+        Object dimension = pool.intern(new String("country"));
+        Object predicate = pool.intern(new QueryParser.DefaultCheck<>("DE", false, String.class));
+        assertThat(pool.size()).isEqualTo(2);
+
+        dimension = predicate = null;
+        for (int i = 0; i < 50 && pool.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(pool.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void cacheInternsParsedFilters() {
+        FilterCache cache = new FilterCache(10, 0, TimeUnit.NANOSECONDS, ParserEngine.PARBOILED, new PredicatePool());
+        Filter a = cache.getFilter("country:DE;age:5");
+        Filter b = cache.getFilter("country:DE;age:6");
+
+        assertThat(b.getPredicate("country")).isSameAs(a.getPredicate("country"));
+        assertThat(cache.getBucket("invalid(").isMatched()).isFalse();
+    }
+
+}
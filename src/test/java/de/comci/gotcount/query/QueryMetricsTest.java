@@ -0,0 +1,152 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.data.Offset.offset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class QueryMetricsTest {
+
+    private QueryMetrics metrics;
+
+    @Before
+    public void install() {
+        metrics = new QueryMetrics();
+        Metrics.setSink(metrics);
+    }
+
+    @After
+    public void uninstall() {
+        Metrics.setSink(null);
+    }
+
+    @Test
+    public void timesParsesPerRule() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            Filter.fromString("d0:a;d1:[1,5]", engine);
+            Filter.fromString("not a filter", engine);
+            Bucket.fromString("Adults:[20,99]", engine);
+        }
+
+        assertThat(metrics.getQueryParses()).isEqualTo(4);
+        assertThat(metrics.getQueryParseFailures()).isEqualTo(2);
+        assertThat(metrics.getFilterParses()).isEqualTo(2);
+        assertThat(metrics.getFilterParseFailures()).isEqualTo(0);
+        long histogram = 0;
+        for (long count : metrics.getQueryLatencyHistogram()) {
+            histogram += count;
+        }
+        assertThat(histogram).isEqualTo(4);
+        assertThat(metrics.getLatencyPercentile(MetricsSink.QUERY, 50)).isGreaterThan(0);
+        assertThat(metrics.getLatencyPercentile(MetricsSink.QUERY, 100))
+                .isGreaterThanOrEqualTo(metrics.getLatencyPercentile(MetricsSink.QUERY, 50));
+    }
+
+    @Test
+    public void percentilesFromHistogram() {
+        metrics.parsed(MetricsSink.FILTER, 3, true);   // < 4
+        metrics.parsed(MetricsSink.FILTER, 100, true); // < 128
+        metrics.parsed(MetricsSink.FILTER, 1000, true); // < 1024
+
+        assertThat(metrics.getLatencyPercentile(MetricsSink.FILTER, 0)).isEqualTo(4);
+        assertThat(metrics.getLatencyPercentile(MetricsSink.FILTER, 50)).isEqualTo(128);
+        assertThat(metrics.getLatencyPercentile(MetricsSink.FILTER, 100)).isEqualTo(1024);
+        assertThat(metrics.getLatencyPercentile(MetricsSink.QUERY, 50)).isEqualTo(0);
+    }
+
+    @Test
+    public void countsCacheHits() {
+        FilterCache cache = new FilterCache(10);
+        cache.getFilter("d0:a");
+        cache.getFilter("d0:a");
+        cache.getFilter("d0:a");
+        cache.getBucket("B:[1,2]");
+
+        assertThat(metrics.getCacheHits()).isEqualTo(2);
+        assertThat(metrics.getCacheMisses()).isEqualTo(2);
+        assertThat(metrics.getCacheHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void countsEvaluationsPerPredicateType() {
+        FilterEvaluator evaluator = Filter.fromString("n:{1,2,3,4};r:[0,9]").compile();
+        final Map<String, Object> values = new HashMap<>();
+        Row row = new Row() {
+
+            @Override
+            public Object get(String dimension) {
+                return values.get(dimension);
+            }
+
+        };
+        for (long i = 0; i < FilterEvaluator.REPLAN_INTERVAL; i++) {
+            values.put("n", i % 8);
+            values.put("r", 5l);
+            evaluator.test(row);
+        }
+
+        Map<String, Long> evaluations = metrics.getEvaluations();
+        assertThat(evaluations.keySet()).containsOnly("ListCheck", "RangeCheck");
+        assertThat(evaluations.get("ListCheck") + evaluations.get("RangeCheck")).isGreaterThan(FilterEvaluator.REPLAN_INTERVAL - 1);
+        assertThat(metrics.getPassRatios().get("ListCheck")).isEqualTo(0.5, offset(0.01));
+    }
+
+    @Test
+    public void flushReportsRowsBeforeTheFirstReplan() {
+        FilterEvaluator evaluator = Filter.fromString("r:[0,9]").compile();
+        Row row = new Row() {
+
+            @Override
+            public Object get(String dimension) {
+                return 5l;
+            }
+
+        };
+        for (int i = 0; i < 10; i++) {
+            evaluator.test(row);
+        }
+        assertThat(metrics.getEvaluations()).isEmpty();
+
+        evaluator.flushMetrics();
+        assertThat(metrics.getEvaluations().get("RangeCheck")).isEqualTo(10l);
+        evaluator.flushMetrics();
+        assertThat(metrics.getEvaluations().get("RangeCheck")).isEqualTo(10l);
+    }
+
+    @Test
+    public void disabledReportsNothing() {
+        Metrics.setSink(null);
+        Filter.fromString("d0:a");
+
+        assertThat(metrics.getQueryParses()).isEqualTo(0);
+        assertThat(Metrics.getSink()).isNull();
+    }
+
+    @Test
+    public void exportsThroughJmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = metrics.register(server);
+        Filter.fromString("d0:a");
+
+        assertThat(name.toString()).isEqualTo(QueryMetrics.OBJECT_NAME);
+        assertThat(server.getAttribute(name, "QueryParses")).isEqualTo(1l);
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertThat(metrics.getQueryParses()).isEqualTo(0);
+    }
+
+}
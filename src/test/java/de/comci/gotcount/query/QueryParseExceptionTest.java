@@ -0,0 +1,109 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.NoSuchElementException;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class QueryParseExceptionTest {
+
+    @Test
+    public void parsesValidInput() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            Filter strict = Filter.parse("d0:a;d1:[1,5];d2:!{x,y}", engine);
+            Filter lenient = Filter.fromString("d0:a;d1:[1,5];d2:!{x,y}", engine);
+
+            assertThat(strict.getDimensions()).containsOnly("d0", "d1", "d2");
+            for (String dimension : lenient.getDimensions()) {
+                assertThat(strict.getPredicate(dimension)).isEqualTo(lenient.getPredicate(dimension));
+            }
+            assertThat(Bucket.parse("Adults:[20,99]", engine).getName()).isEqualTo("Adults");
+        }
+    }
+
+    @Test
+    public void reportsErrorPosition() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            assertPosition(engine, "d0:[1,5]x", 8);
+            assertPosition(engine, "d0:[1,", 6);
+            assertPosition(engine, "d0:a;d1:(2013-01-01,5]", 20);
+            assertPosition(engine, "not a filter", 12);
+            assertPosition(engine, "", 0);
+        }
+    }
+
+    @Test
+    public void rejectsTrailingInputTheLenientParserIgnores() {
+        assertThat(Filter.fromString("d0:[1,5]x").getDimensions()).containsOnly("d0");
+        try {
+            Bucket.parse("Adults:[20,99] and more");
+            fail("trailing input accepted");
+        } catch (QueryParseException ex) {
+            assertThat(ex.getRule()).isEqualTo(MetricsSink.FILTER);
+            assertThat(ex.getPosition()).isEqualTo(14);
+            assertThat(ex.getMessage()).contains("Adults:[20,99] >> and more");
+        }
+    }
+
+    @Test
+    public void unmatchedBucketHasNoNameOrPredicate() {
+        Bucket bucket = Bucket.fromString("invalid(");
+        try {
+            bucket.getName();
+            fail("name of unmatched bucket");
+        } catch (NoSuchElementException ex) {
+        }
+        try {
+            bucket.getPredicate();
+            fail("predicate of unmatched bucket");
+        } catch (NoSuchElementException ex) {
+        }
+    }
+
+    @Test
+    public void enforcesLimits() {
+        ParseLimits limits = new ParseLimits(20, 2, 3);
+
+        assertLimit("d0:abcdefghijklmnopqrstuvwxyz", limits, "29 characters");
+        assertLimit("a:1;b:2;c:3", limits, "3 dimensions");
+        assertLimit("a:{1,2,3,4}", limits, "4 members");
+        assertThat(Filter.parse("a:{1,2,3};b:2", ParserEngine.RECURSIVE_DESCENT, limits).getDimensions()).hasSize(2);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void lenientInvalidFilterHasNoPredicates() {
+        Filter.fromString("not a filter").getPredicate("not a filter");
+    }
+
+    private static void assertPosition(ParserEngine engine, String input, int position) {
+        try {
+            Filter.parse(input, engine);
+            fail(input + " accepted");
+        } catch (QueryParseException ex) {
+            assertThat(ex.getRule()).isEqualTo(MetricsSink.QUERY);
+            assertThat(ex.getPosition()).as(engine + " " + input).isEqualTo(position);
+        }
+    }
+
+    private static void assertLimit(String input, ParseLimits limits, String message) {
+        for (ParserEngine engine : ParserEngine.values()) {
+            try {
+                Filter.parse(input, engine, limits);
+                fail(input + " accepted");
+            } catch (QueryParseException ex) {
+                assertThat(ex.getPosition()).isEqualTo(-1);
+                assertThat(ex.getMessage()).contains(message);
+            }
+        }
+    }
+
+}
@@ -5,47 +5,176 @@
  */
 package de.comci.gotcount.query;
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import static org.fest.assertions.api.Assertions.assertThat;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
 import org.parboiled.Parboiled;
 import org.parboiled.parserunners.ReportingParseRunner;
 import org.parboiled.parserunners.TracingParseRunner;
-import org.parboiled.support.ParseTreeUtils;
 import org.parboiled.support.ParsingResult;
 
 /**
+ * Runs every grammar test against all {@link ParserEngine}s
  *
  * @author Sebastian Maier (sebastian.maier@comci.de)
  */
+@RunWith(Parameterized.class)
 public class QueryParserTest {
 
-    private QueryParser parser;
-    private ReportingParseRunner<Object> reportingParseRunner;
+    @Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{
+            {ParserEngine.PARBOILED},
+            {ParserEngine.RECURSIVE_DESCENT}
+        });
+    }
+
+    /**
+     * The grammar rules tested individually, resolved for either engine
+     */
+    private enum GrammarRule {
+
+        QUERY {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Query();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Query();
+            }
+        },
+        DIMENSION {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Dimension();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Dimension();
+            }
+        },
+        LIST_PREDICATE {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.ListPredicate();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.ListPredicate();
+            }
+        },
+        DATE {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Date();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Date();
+            }
+        },
+        TIME {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Time();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Time();
+            }
+        },
+        DOUBLE {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Double();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Double();
+            }
+        },
+        LONG {
+            @Override
+            org.parboiled.Rule of(QueryParser p) {
+                return p.Long();
+            }
+
+            @Override
+            boolean run(RecursiveDescentParser p) {
+                return p.Long();
+            }
+        };
+
+        abstract org.parboiled.Rule of(QueryParser p);
+
+        abstract boolean run(RecursiveDescentParser p);
+
+    }
+
+    /**
+     * Engine independent parsing result
+     */
+    private static class Result {
+
+        final boolean matched;
+        final Object resultValue;
+
+        Result(boolean matched, Object resultValue) {
+            this.matched = matched;
+            this.resultValue = resultValue;
+        }
+
+    }
+
+    private final ParserEngine engine;
     private TracingParseRunner<Object> traceingParseRunner;
 
+    public QueryParserTest(ParserEngine engine) {
+        this.engine = engine;
+    }
+
     @Before
     public void setUp() {
-        parser = Parboiled.createParser(QueryParser.class);
-        reportingParseRunner = new ReportingParseRunner<>(parser.Query());
+        QueryParser parser = Parboiled.createParser(QueryParser.class);
         traceingParseRunner = new TracingParseRunner<>(parser.Query());
     }
 
-    private Map<String, Predicate> defaultSuccessChecks(ParsingResult<Object> result) {
+    private Map<String, Predicate> defaultSuccessChecks(Result result) {
         assertThat(result.matched).isTrue();
         assertThat(result.resultValue).isInstanceOf(Map.class);
         return (Map) result.resultValue;
     }
 
-    private ParsingResult<Object> run(String input) {
-        ParsingResult<Object> result = reportingParseRunner.run(input);
-        return result;
+    private Result run(String input) {
+        return run(GrammarRule.QUERY, input);
+    }
+
+    private Result run(GrammarRule rule, String input) {
+        if (engine == ParserEngine.PARBOILED) {
+            QueryParser p = Parboiled.createParser(QueryParser.class);
+            ParsingResult<Object> result = new ReportingParseRunner<>(rule.of(p)).run(input);
+            return new Result(result.matched, result.resultValue);
+        }
+        RecursiveDescentParser p = new RecursiveDescentParser(input);
+        boolean matched = rule.run(p);
+        return new Result(matched, matched ? p.value() : null);
     }
 
     private ParsingResult<Object> trace(String input) {
@@ -58,7 +187,7 @@ public class QueryParserTest {
 
         String input = "d:123";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         defaultSuccessChecks(result);
         final Map<String, Predicate> mapped = (Map) result.resultValue;
         assertThat(mapped.size()).isEqualTo(1);
@@ -75,7 +204,7 @@ public class QueryParserTest {
         int filter = 123;
         String input = dimension + ":" + filter;
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         defaultSuccessChecks(result);
         final Map<String, Predicate> mapped = (Map) result.resultValue;
         assertThat(mapped.size()).isEqualTo(1);
@@ -92,7 +221,7 @@ public class QueryParserTest {
         int filter = 123;
         String input = dimension + ":" + filter;
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         final Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.size()).isEqualTo(1);
@@ -107,7 +236,7 @@ public class QueryParserTest {
         int filter = 123;
         String input = dimension + ":" + filter;
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         assertThat(result.matched).isFalse();
     }
 
@@ -115,9 +244,7 @@ public class QueryParserTest {
     public void dimensionWithWhitespace() {
         String dimension = "I have some whitespace";
 
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Dimension());
-        ParsingResult<Object> result = runner.run(dimension);
+        Result result = run(GrammarRule.DIMENSION, dimension);
         assertThat(result.resultValue).isEqualTo(dimension);
     }
 
@@ -127,7 +254,7 @@ public class QueryParserTest {
         int filter = 123;
         String input = dimension + ":" + filter;
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         final Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.size()).isEqualTo(1);
@@ -141,7 +268,7 @@ public class QueryParserTest {
         int filter = 123;
         String input = dimension + ":" + filter;
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         final Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.size()).isEqualTo(1);
@@ -154,7 +281,7 @@ public class QueryParserTest {
     public void escapedCharsInFilter() {
         String input = "d0:ab\\:cd;d1:a\\(b\\)c;d2:a\\[b\\]c;d3:a\\;b;d4:a\\!bc";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0", "d1", "d2", "d3", "d4");
@@ -168,7 +295,7 @@ public class QueryParserTest {
     @Test
     public void escapedExclamationMarkAtBeginning() {
         String input = "d:\\!abc";
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d");
@@ -180,7 +307,7 @@ public class QueryParserTest {
 
         String input = "d0:0;d1:1";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0", "d1");
@@ -193,7 +320,7 @@ public class QueryParserTest {
 
         String input = "d0:12:13;d1:2001-01-01;d2:aString";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0", "d1", "d2");
@@ -207,7 +334,7 @@ public class QueryParserTest {
 
         String input = "d0:!0;d1:!abc";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0", "d1");
@@ -224,7 +351,7 @@ public class QueryParserTest {
 
         String input = "d1:!2012-12-24";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d1");
@@ -244,9 +371,7 @@ public class QueryParserTest {
     private void testISODateRule(String dateToParse, int year, int month, int day, int hour, int min, int sec) {
         String input = dateToParse;
 
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Date());
-        ParsingResult<Object> run = runner.run(input);
+        Result run = run(GrammarRule.DATE, input);
 
         Date expected = getDate(year, month, day, hour, min, sec);
 
@@ -274,9 +399,7 @@ public class QueryParserTest {
 
     private void testTimeRule(String timeToParse, int hour, int min, int sec) {
 
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Time());
-        ParsingResult<Object> run = runner.run(timeToParse);
+        Result run = run(GrammarRule.TIME, timeToParse);
 
         Calendar c = Calendar.getInstance();
         c.set(Calendar.MILLISECOND, 0);
@@ -293,7 +416,7 @@ public class QueryParserTest {
 
         String input = "d0:2012-02-28";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         Calendar c = Calendar.getInstance();
@@ -311,7 +434,7 @@ public class QueryParserTest {
 
         String input = "d0:12:46";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         Calendar c = Calendar.getInstance();
@@ -329,7 +452,7 @@ public class QueryParserTest {
 
         String input = "d0:{a,befg,c,d}";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -346,10 +469,6 @@ public class QueryParserTest {
         System.out.println(traceingParseRunner.getLog());
     }
 
-    private void printNodeTree(ParsingResult<Object> result) {
-        System.out.println(ParseTreeUtils.printNodeTree(result));
-    }
-
     @Test
     public void everythingWeConsiderToBeAValidString() {
 
@@ -377,7 +496,7 @@ public class QueryParserTest {
         tests.put("A/B/1", new QueryParser.DefaultCheck<>("A/B/1", false, String.class));
 
         for (Entry<String, ? extends QueryParser.DefaultCheck> e : tests.entrySet()) {
-            ParsingResult<Object> result = run("d0:" + e.getKey());
+            Result result = run("d0:" + e.getKey());
             Map<String, Predicate> mapped = defaultSuccessChecks(result);
             assertThat(mapped.keySet()).containsOnly("d0");
             assertThat(mapped.get("d0")).isEqualTo(e.getValue());
@@ -390,7 +509,7 @@ public class QueryParserTest {
 
         String input = "d0:10.10.10.10";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
         assertThat(mapped.keySet()).containsOnly("d0");
         assertThat(mapped.get("d0")).isEqualTo(new QueryParser.DefaultCheck<>("10.10.10.10", false, String.class));
@@ -402,7 +521,7 @@ public class QueryParserTest {
 
         String input = "d0:(1,5)";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -416,7 +535,7 @@ public class QueryParserTest {
 
         String input = "d0:[1,5)";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -430,7 +549,7 @@ public class QueryParserTest {
 
         String input = "d0:(1,5]";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -444,7 +563,7 @@ public class QueryParserTest {
 
         String input = "d0:(2010-01-01,2013-12-31)";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -466,7 +585,7 @@ public class QueryParserTest {
 
         String input = "d0:[2010-01-01,2013-12-31]";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -484,12 +603,11 @@ public class QueryParserTest {
     }
 
     @Test
-    @Ignore // does not work yet
     public void negatedDoubleList() {
 
         String input = "d0:!{0.1,0.4,65}";
 
-        ParsingResult<Object> result = run(input);
+        Result result = run(input);
         Map<String, Predicate> mapped = defaultSuccessChecks(result);
 
         assertThat(mapped.keySet()).containsOnly("d0");
@@ -503,9 +621,7 @@ public class QueryParserTest {
 
     @Test
     public void testListPredicate() {
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.ListPredicate());
-        ParsingResult<Object> result = runner.run("{1,23,4}");
+        Result result = run(GrammarRule.LIST_PREDICATE, "{1,23,4}");
 
         Predicate actual = (Predicate) result.resultValue;
         assertThat(actual).isNotNull();
@@ -515,33 +631,25 @@ public class QueryParserTest {
 
     @Test
     public void doubleNumber() {
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Double());
-        ParsingResult<Object> result = runner.run("0.1");
+        Result result = run(GrammarRule.DOUBLE, "0.1");
         assertThat(result.resultValue).isEqualTo(0.1);
     }
 
     @Test
     public void negativeDoubleNumber() {
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Double());
-        ParsingResult<Object> result = runner.run("-0.1");
+        Result result = run(GrammarRule.DOUBLE, "-0.1");
         assertThat(result.resultValue).isEqualTo(-0.1);
     }
 
     @Test
     public void longNumber() {
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Long());
-        ParsingResult<Object> result = runner.run("4711");
+        Result result = run(GrammarRule.LONG, "4711");
         assertThat(result.resultValue).isEqualTo(4711l);
     }
 
     @Test
     public void negativeLongNumber() {
-        QueryParser p = Parboiled.createParser(QueryParser.class);
-        ReportingParseRunner<Object> runner = new ReportingParseRunner<>(p.Long());
-        ParsingResult<Object> result = runner.run("-4711");
+        Result result = run(GrammarRule.LONG, "-4711");
         assertThat(result.resultValue).isEqualTo(-4711l);
     }
     
@@ -604,4 +712,191 @@ public class QueryParserTest {
 
     }
 
+    @Test
+    public void listCheckNormalizesNumbers() {
+
+        QueryParser.ListCheck<Object> lc = new QueryParser.ListCheck<Object>(Arrays.<Object>asList(5l, 7l), false, Object.class);
+
+        assertThat(lc.test(5)).isTrue();
+        assertThat(lc.test(5l)).isTrue();
+        assertThat(lc.test(7.0)).isTrue();
+        assertThat(lc.test(7.5)).isFalse();
+        assertThat(lc.test(6)).isFalse();
+        assertThat(lc.test("5")).isFalse();
+
+    }
+
+    @Test
+    public void listCheckEqualityComparesTheParsedList() {
+
+        QueryParser.ListCheck<Object> lc = new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "b", 1l), false, Object.class);
+
+        assertThat(lc).isEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "b", 1l), false, Object.class));
+        assertThat(lc.hashCode()).isEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "b", 1l), false, Object.class).hashCode());
+        assertThat(lc).isNotEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("b", "a", 1l), false, Object.class));
+        assertThat(lc).isNotEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "b", 1.0), false, Object.class));
+        assertThat(lc).isNotEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "b", 1l), true, Object.class));
+        assertThat(lc).isNotEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("a", "c", 1l), false, Object.class));
+
+    }
+
+    @Test
+    public void listCheckWithMixedMembers() {
+
+        Result result = run("d0:{a,2,0.5,2012-12-24}");
+        Map<String, Predicate> mapped = defaultSuccessChecks(result);
+
+        assertThat(mapped.get("d0").test("a")).isTrue();
+        assertThat(mapped.get("d0").test(2)).isTrue();
+        assertThat(mapped.get("d0").test(2.0)).isTrue();
+        assertThat(mapped.get("d0").test(0.5)).isTrue();
+        assertThat(mapped.get("d0").test(getDate(2012, 12, 24, 0, 0, 0))).isTrue();
+        assertThat(mapped.get("d0").test("b")).isFalse();
+        assertThat(mapped.get("d0").test(3)).isFalse();
+
+    }
+
+    @Test
+    public void largeNegatedList() {
+
+        StringBuilder input = new StringBuilder("d0:!{");
+        for (int i = 0; i < 5000; i++) {
+            input.append((i > 0) ? "," : "").append(2 * i);
+        }
+        input.append("}");
+
+        Result result = run(input.toString());
+        Map<String, Predicate> mapped = defaultSuccessChecks(result);
+
+        assertThat(mapped.get("d0").test(0)).isFalse();
+        assertThat(mapped.get("d0").test(9998l)).isFalse();
+        assertThat(mapped.get("d0").test(1)).isTrue();
+        assertThat(mapped.get("d0").test(10000)).isTrue();
+        assertThat(mapped.get("d0").test(-2)).isTrue();
+
+    }
+
+    @Test
+    public void primitiveNumberCheck() {
+
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:4;d1:!0.5"));
+
+        LongPredicate d0 = (LongPredicate) mapped.get("d0");
+        assertThat(d0.testLong(4)).isTrue();
+        assertThat(d0.testLong(5)).isFalse();
+        assertThat(((DoublePredicate) d0).testDouble(4.0)).isTrue();
+
+        DoublePredicate d1 = (DoublePredicate) mapped.get("d1");
+        assertThat(d1.testDouble(0.5)).isFalse();
+        assertThat(d1.testDouble(0.25)).isTrue();
+        assertThat(((LongPredicate) d1).testLong(0)).isTrue();
+
+    }
+
+    @Test
+    public void primitiveRangeCheck() {
+
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:[1,3);d1:(0.5,1.5];d2:[2010-01-01,2013-12-31)"));
+
+        LongPredicate d0 = (LongPredicate) mapped.get("d0");
+        assertThat(d0.testLong(0)).isFalse();
+        assertThat(d0.testLong(1)).isTrue();
+        assertThat(d0.testLong(3)).isFalse();
+        assertThat(((DoublePredicate) d0).testDouble(2.9)).isTrue();
+
+        DoublePredicate d1 = (DoublePredicate) mapped.get("d1");
+        assertThat(d1.testDouble(0.5)).isFalse();
+        assertThat(d1.testDouble(1.5)).isTrue();
+        assertThat(((LongPredicate) d1).testLong(1)).isTrue();
+
+        LongPredicate d2 = (LongPredicate) mapped.get("d2");
+        assertThat(d2.testLong(getDate(2010, 1, 1, 0, 0, 0).getTime())).isTrue();
+        assertThat(d2.testLong(getDate(2013, 12, 31, 0, 0, 0).getTime())).isFalse();
+
+    }
+
+    @Test
+    public void primitiveListCheck() {
+
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:{1,2,3};d1:!{0.5,2};d2:{a,4}"));
+
+        LongPredicate d0 = (LongPredicate) mapped.get("d0");
+        assertThat(d0.testLong(2)).isTrue();
+        assertThat(d0.testLong(4)).isFalse();
+        assertThat(((DoublePredicate) d0).testDouble(2.0)).isTrue();
+        assertThat(((DoublePredicate) d0).testDouble(2.5)).isFalse();
+
+        DoublePredicate d1 = (DoublePredicate) mapped.get("d1");
+        assertThat(d1.testDouble(0.5)).isFalse();
+        assertThat(d1.testDouble(0.75)).isTrue();
+        assertThat(((LongPredicate) d1).testLong(2)).isFalse();
+
+        LongPredicate d2 = (LongPredicate) mapped.get("d2");
+        assertThat(d2.testLong(4)).isTrue();
+        assertThat(d2.testLong(5)).isFalse();
+
+    }
+
+    @Test
+    public void primitiveDateListCheck() {
+
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:{2012-12-24,2013-01-01};d1:!{2012-12-24,2013-01-01}"));
+        long christmas = getDate(2012, 12, 24, 0, 0, 0).getTime();
+        long newYear = getDate(2013, 1, 1, 0, 0, 0).getTime();
+
+        LongPredicate d0 = (LongPredicate) mapped.get("d0");
+        assertThat(d0.testLong(christmas)).isTrue();
+        assertThat(d0.testLong(newYear)).isTrue();
+        assertThat(d0.testLong(christmas + 1)).isFalse();
+        assertThat(((LongPredicate) mapped.get("d1")).testLong(christmas)).isFalse();
+        assertThat(((LongPredicate) mapped.get("d1")).testLong(0)).isTrue();
+        assertThat(mapped.get("d0").test(new Date(newYear))).isTrue();
+
+        long[] selection = Bitmaps.allocate(3);
+        ((BatchPredicate) d0).selectLong(new long[]{newYear, 0, christmas}, 0, 3, selection, false);
+        assertThat(selection[0]).isEqualTo(5l);
+
+    }
+
+    @Test
+    public void primitiveDateCheck() {
+
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:2012-12-24;d1:!12:46"));
+
+        assertThat(((LongPredicate) mapped.get("d0")).testLong(getDate(2012, 12, 24, 0, 0, 0).getTime())).isTrue();
+        assertThat(((LongPredicate) mapped.get("d0")).testLong(0)).isFalse();
+        assertThat(((LongPredicate) mapped.get("d1")).testLong(getDate(1970, 1, 1, 12, 46, 0).getTime())).isFalse();
+
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringCheckRejectsOtherTypes() {
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:abc"));
+        mapped.get("d0").test(5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dateCheckRejectsOtherTypes() {
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:2012-12-24"));
+        mapped.get("d0").test("2012-12-24");
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void rangeCheckRejectsIncompatibleTypes() {
+        Map<String, Predicate> mapped = defaultSuccessChecks(run("d0:[1,5]"));
+        mapped.get("d0").test(3); // Integer against Long bounds
+    }
+
+    @Test
+    public void doubleRangeCheckKeepsCompareToOrdering() {
+
+        QueryParser.RangeCheck rc = new QueryParser.RangeCheck(0.0, true, 1.0, true);
+
+        assertThat(rc.test(0.0)).isTrue();
+        assertThat(rc.test(1.0)).isTrue();
+        assertThat(rc.test(-0.0)).isFalse();
+        assertThat(rc.test(Double.NaN)).isFalse();
+
+    }
+
 }
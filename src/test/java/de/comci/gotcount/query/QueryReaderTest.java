@@ -0,0 +1,161 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class QueryReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsFiltersLineByLine() throws IOException {
+        QueryReader<Filter> reader = QueryReader.filters(new StringReader("d0:abc;d1:!4\n\npath:{node,user}\r\n"));
+
+        QueryReader.Line<Filter> first = reader.next();
+        assertThat(first.getNumber()).isEqualTo(1);
+        assertThat(first.isValid()).isTrue();
+        assertThat(first.getValue().getDimensions()).containsOnly("d0", "d1");
+
+        QueryReader.Line<Filter> second = reader.next();
+        assertThat(second.getNumber()).isEqualTo(3);
+        assertThat(second.getText()).isEqualTo("path:{node,user}");
+        assertThat(second.getValue().getPredicate("path").test("user")).isTrue();
+
+        assertThat(reader.hasNext()).isFalse();
+        reader.close();
+    }
+
+    @Test
+    public void reportsInvalidLinesAndContinues() throws IOException {
+        QueryReader<Filter> reader = QueryReader.filters(new StringReader("d0:a\nnot a filter\nd1:(2013-02-30,2013-03-01]\nd2:b"));
+        List<QueryReader.Line<Filter>> lines = readAll(reader);
+
+        assertThat(lines).hasSize(4);
+        assertThat(lines.get(0).isValid()).isTrue();
+        assertThat(lines.get(1).isValid()).isFalse();
+        assertThat(lines.get(1).getValue()).isNull();
+        assertThat(lines.get(1).getError()).contains("line 2");
+        // days out of range roll over, see DateDecoder
+        assertThat(lines.get(2).isValid()).isTrue();
+        assertThat(lines.get(2).getValue().getPredicate("d1")).isEqualTo(Filter.parse("d1:(2013-03-02,2013-03-01]").getPredicate("d1"));
+        assertThat(lines.get(3).getValue().getDimensions()).containsOnly("d2");
+    }
+
+    @Test
+    public void rejectsLinesMatchingOnlyAPrefix() throws IOException {
+        for (ParserEngine engine : ParserEngine.values()) {
+            List<QueryReader.Line<Filter>> filters = readAll(QueryReader.filters(new StringReader("d2:b;%%%garbage\nd3:a;d4:b c"), engine, 1));
+            List<QueryReader.Line<Bucket>> buckets = readAll(QueryReader.buckets(new StringReader("Adults:[20,99] and more"), engine, 1));
+
+            assertThat(filters.get(0).isValid()).isFalse();
+            assertThat(filters.get(0).getPosition()).isEqualTo(5);
+            assertThat(filters.get(1).isValid()).isFalse();
+            assertThat(filters.get(1).getPosition()).isEqualTo(9);
+            assertThat(filters.get(1).getError()).contains("line 2").contains("position 9");
+            assertThat(buckets.get(0).isValid()).isFalse();
+            assertThat(buckets.get(0).getPosition()).isEqualTo(14);
+        }
+    }
+
+    @Test
+    public void readsBuckets() throws IOException {
+        List<QueryReader.Line<Bucket>> lines = readAll(QueryReader.buckets(new StringReader("Children:[0,19]\nAdults:[20,99]")));
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(0).getValue().getName()).isEqualTo("Children");
+        assertThat(lines.get(1).getValue().getPredicate().test(20l)).isTrue();
+    }
+
+    @Test
+    public void appliesLimitsAndDecoder() throws IOException {
+        DateDecoder utc = DateDecoder.of(ZoneId.of("UTC"));
+        List<QueryReader.Line<Filter>> lines = readAll(QueryReader.filters(
+                new StringReader("d0:{a,b}\nd0:{a,b,c}\nd1:1970-01-02"), ParserEngine.PARBOILED, new ParseLimits(100, 2, 2), utc, 1));
+
+        assertThat(lines.get(0).isValid()).isTrue();
+        assertThat(lines.get(1).isValid()).isFalse();
+        assertThat(lines.get(2).getValue().getPredicate("d1").test(new Date(86400000l))).isTrue();
+    }
+
+    @Test
+    public void parsesInParallelInInputOrder() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            input.append("d").append(i).append(':').append(i).append('\n');
+            if (i % 50 == 0) {
+                input.append("invalid\n");
+            }
+        }
+        for (ParserEngine engine : ParserEngine.values()) {
+            List<QueryReader.Line<Filter>> lines = readAll(QueryReader.filters(new StringReader(input.toString()), engine, 4));
+
+            assertThat(lines).hasSize(510);
+            int valid = 0;
+            int number = 0;
+            for (QueryReader.Line<Filter> line : lines) {
+                assertThat(line.getNumber()).isGreaterThan(number);
+                number = line.getNumber();
+                if (line.isValid()) {
+                    assertThat(line.getValue().getDimensions()).containsOnly("d" + valid);
+                    assertThat(line.getValue().getPredicate("d" + valid).test((long) valid)).isTrue();
+                    valid++;
+                }
+            }
+            assertThat(valid).isEqualTo(500);
+        }
+    }
+
+    @Test
+    public void readsFromPath() throws IOException {
+        File file = folder.newFile("filters.txt");
+        Files.write(file.toPath(), Arrays.asList("d0:abc", "d1:{x,y}"), StandardCharsets.UTF_8);
+
+        List<QueryReader.Line<Filter>> lines = readAll(QueryReader.filters(file.toPath(), ParserEngine.RECURSIVE_DESCENT, 2));
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines.get(1).getValue().getPredicate("d1").test("y")).isTrue();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void nextAfterClose() throws IOException {
+        QueryReader<Filter> reader = QueryReader.filters(new StringReader("d0:a"), ParserEngine.PARBOILED, 2);
+        reader.close();
+        reader.next();
+    }
+
+    private static <T> List<QueryReader.Line<T>> readAll(QueryReader<T> reader) throws IOException {
+        List<QueryReader.Line<T>> lines = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                lines.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class ScanPlanTest {
+
+    @Test
+    public void describesEveryPredicateType() {
+        Map<String, ScanPlan> plans = Filter.fromString("name:abc;n:4;age:[18,65);path:{user,node,user};ids:{3,1.0,2.5}").getScanPlans();
+
+        assertThat(plans.get("name").getType()).isEqualTo(ScanPlan.Type.POINTS);
+        assertThat(plans.get("name").getPoints()).containsExactly("abc");
+        assertThat(plans.get("n").getPoints()).containsExactly(4l);
+
+        ScanPlan.Interval age = plans.get("age").getRange();
+        assertThat(age.getFrom()).isEqualTo(18l);
+        assertThat(age.isFromInclusive()).isTrue();
+        assertThat(age.getTo()).isEqualTo(65l);
+        assertThat(age.isToInclusive()).isFalse();
+
+        assertThat(plans.get("path").getPoints()).containsExactly("node", "user");
+        assertThat(plans.get("ids").getPoints()).containsExactly(1l, 2.5, 3l);
+    }
+
+    @Test
+    public void describesNegationsAsComplements() {
+        Map<String, ScanPlan> plans = Filter.fromString("name:!abc;ids:!{5,1,3}").getScanPlans();
+
+        assertThat(plans.get("name").getType()).isEqualTo(ScanPlan.Type.COMPLEMENT);
+        assertThat(plans.get("name").getComplemented().getPoints()).containsExactly("abc");
+        assertThat(plans.get("ids").getIntervals()).isEqualTo(Arrays.asList(
+                new ScanPlan.Interval(null, false, 1l, false),
+                new ScanPlan.Interval(1l, false, 3l, false),
+                new ScanPlan.Interval(3l, false, 5l, false),
+                new ScanPlan.Interval(5l, false, null, false)));
+    }
+
+    @Test
+    public void turnsPlansIntoIntervals() {
+        ScanPlan range = ScanPlan.range(18l, true, 65l, false);
+
+        assertThat(range.getIntervals()).containsExactly(new ScanPlan.Interval(18l, true, 65l, false));
+        assertThat(range.complement().getIntervals()).containsExactly(
+                new ScanPlan.Interval(null, false, 18l, false),
+                new ScanPlan.Interval(65l, true, null, false));
+        assertThat(range.complement().complement()).isEqualTo(range);
+        assertThat(ScanPlan.points(Arrays.asList("b", "a")).getIntervals()).containsExactly(
+                new ScanPlan.Interval("a", true, "a", true),
+                new ScanPlan.Interval("b", true, "b", true));
+        assertThat(ScanPlan.points(Arrays.asList()).complement().getIntervals()).containsExactly(
+                new ScanPlan.Interval(null, false, null, false));
+    }
+
+    @Test
+    public void datesCannotBeChangedThroughThePlan() {
+        Filter filter = Filter.fromString("d:[2012-01-01,2013-01-01];l:{2012-01-01,2012-06-01}");
+        Predicate range = filter.getPredicate("d");
+        Predicate list = filter.getPredicate("l");
+        String before = range.toString() + list.toString();
+
+        ScanPlan plan = filter.getScanPlans().get("d");
+        ((Date) plan.getRange().getFrom()).setTime(-1000);
+        ((Date) filter.getScanPlans().get("l").getPoints().get(0)).setTime(-1000);
+
+        assertThat(range.toString() + list.toString()).isEqualTo(before);
+        assertThat(((Date) plan.getRange().getFrom()).getTime()).isNotEqualTo(-1000l);
+        assertThat(filter.getScanPlans().get("d")).isEqualTo(plan);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullConstantHasNoPlan() {
+        new QueryParser.DefaultCheck<>(null, false, Object.class).toScanPlan();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rangeOfAPointPlan() {
+        ScanPlan.points(Arrays.asList("a")).getRange();
+    }
+
+}
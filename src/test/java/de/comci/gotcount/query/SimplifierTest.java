@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package de.comci.gotcount.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Sebastian Maier (sebastian.maier@comci.de)
+ */
+public class SimplifierTest {
+
+    @Test
+    public void singleMemberListsAreEqualities() {
+        for (ParserEngine engine : ParserEngine.values()) {
+            Filter lists = Filter.fromString("s:{abc};n:!{5};d:{2013-01-01};t:{12:30}", engine);
+            Filter equalities = Filter.fromString("s:abc;n:!5;d:2013-01-01;t:12:30", engine);
+            for (String dimension : equalities.getDimensions()) {
+                assertThat(lists.getPredicate(dimension)).isEqualTo(equalities.getPredicate(dimension));
+            }
+        }
+    }
+
+    @Test
+    public void singleMemberListsCheckTheMemberType() {
+        Filter f = Filter.fromString("s:{abc};t:!{abc};n:{5};l:{abc,def};m:!{abc,def}");
+
+        assertThat(f.getPredicate("l").test(5l)).isFalse();
+        assertThat(f.getPredicate("m").test(5l)).isTrue();
+        for (String dimension : Arrays.asList("s", "t")) {
+            try {
+                f.getPredicate(dimension).test(5l);
+                fail("number accepted by " + dimension);
+            } catch (IllegalArgumentException e) {
+                // as for s:abc
+            }
+        }
+        try {
+            f.getPredicate("n").test("abc");
+            fail("string accepted");
+        } catch (ClassCastException e) {
+            // as for n:5
+        }
+        assertThat(f.getPredicate("n").test(5)).isTrue();
+        assertThat(f.getPredicate("n").test(5.0)).isTrue();
+    }
+
+    @Test
+    public void duplicateMembersAreDropped() {
+        Filter f = Filter.fromString("a:{x,y,x};b:{5,5.0};c:{1,2,1}");
+
+        assertThat(f.getPredicate("a")).isEqualTo(new QueryParser.ListCheck<Object>(Arrays.<Object>asList("x", "y"), false, Object.class));
+        assertThat(f.getPredicate("b")).isEqualTo(new QueryParser.NumberCheck(5l, false));
+        assertThat(f.getPredicate("c").test(2l)).isTrue();
+        assertThat(f.getPredicate("c").test(3l)).isFalse();
+        assertThat((List<Object>) ((QueryParser.ListCheck) f.getPredicate("c")).v).containsExactly(1l, 2l);
+    }
+
+    @Test
+    public void rangesWithEqualBounds() {
+        Filter f = Filter.fromString("a:[5,5];b:(5,5);c:[5,5);d:(2.5,2.5];e:[2013-01-01,2013-01-01]");
+
+        assertThat(f.getPredicate("a")).isEqualTo(new QueryParser.NumberCheck(5l, false));
+        assertThat(f.getPredicate("b")).isSameAs(ConstantCheck.FALSE);
+        assertThat(f.getPredicate("c")).isSameAs(ConstantCheck.FALSE);
+        assertThat(f.getPredicate("d")).isSameAs(ConstantCheck.FALSE);
+        assertThat(f.getPredicate("e")).isEqualTo(Filter.fromString("e:2013-01-01").getPredicate("e"));
+        assertThat(f.isUnsatisfiable()).isTrue();
+        assertThat(Filter.fromString("a:[5,6)").getPredicate("a")).isInstanceOf(QueryParser.RangeCheck.class);
+    }
+
+    @Test
+    public void emptyLists() {
+        assertThat(Simplifier.simplify(new QueryParser.ListCheck<Object>(Collections.emptyList(), false, Object.class))).isSameAs(ConstantCheck.FALSE);
+        assertThat(Simplifier.simplify(new QueryParser.ListCheck<Object>(Collections.emptyList(), true, Object.class))).isSameAs(ConstantCheck.TRUE);
+    }
+
+    @Test
+    public void constantDimensions() {
+        Map<String, Predicate> parsed = new HashMap<>();
+        parsed.put("a", ConstantCheck.TRUE);
+        parsed.put("b", new QueryParser.NumberCheck(1l, false));
+        Filter f = new Filter(parsed);
+
+        assertThat(f.isUnsatisfiable()).isFalse();
+        assertThat(f.getConstrainedDimensions()).containsOnly("b");
+        assertThat(Filter.fromString("a:1").isUnsatisfiable()).isFalse();
+        assertThat(Filter.fromString("not a filter").isUnsatisfiable()).isFalse();
+    }
+
+    @Test
+    public void constantsSelectAndPlan() {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("a", new long[100]);
+        long[] selection = Bitmaps.allocate(100);
+        Filter.fromString("a:(1,1)").select(columns, 0, 100, selection);
+        assertThat(Bitmaps.cardinality(selection)).isEqualTo(0);
+
+        ConstantCheck.TRUE.selectLong(new long[100], 0, 70, selection, false);
+        assertThat(Bitmaps.cardinality(selection)).isEqualTo(70);
+
+        assertThat(ConstantCheck.FALSE.toScanPlan().getPoints()).isEmpty();
+        assertThat(ConstantCheck.TRUE.toScanPlan().getType()).isEqualTo(ScanPlan.Type.COMPLEMENT);
+        assertThat(ConstantCheck.FALSE.test(new Date())).isFalse();
+    }
+
+    @Test
+    public void emptyBucketsAreSkippedInLookups() {
+        BucketSet set = BucketSet.fromStrings(Arrays.asList("None:(5,5)", "Low:[0,4]", "High:[5,9]"));
+
+        assertThat(set.get(0).getPredicate()).isSameAs(ConstantCheck.FALSE);
+        assertThat(set.indexOf(5l)).isEqualTo(2);
+        assertThat(set.indexOf(3.5)).isEqualTo(1);
+        assertThat(BucketSet.fromStrings(Arrays.asList("One:{x}", "Two:{y,z}")).indexOf("x")).isEqualTo(0);
+    }
+
+}